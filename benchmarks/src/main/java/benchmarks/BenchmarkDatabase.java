@@ -0,0 +1,88 @@
+package benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import db.DB;
+import db.DbException;
+
+// An H2 database in MySQL mode with the schema of the application, the DB class is pointed to it
+public class BenchmarkDatabase {
+
+	public static final long FIRST_BIRTH_DATE = java.sql.Date.valueOf("1960-01-01").getTime();
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+	// Drops the previous tables and seeds new ones, sellers are spread evenly between the departments
+	public static void create(int departments, int sellers) {
+		Properties props = new Properties();
+		props.setProperty("dburl", "jdbc:h2:mem:benchmarks;MODE=MySQL;DB_CLOSE_DELAY=-1;"
+				+ "DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE");
+		props.setProperty("user", "sa");
+		props.setProperty("password", "");
+		props.setProperty("pool.minSize", "1");
+		props.setProperty("pool.maxSize", "4");
+		// H2 does not accept the negative fetch size of the MySQL streaming mode
+		props.setProperty("jdbc.streamFetchSize", "1000");
+		DB.configure(props);
+
+		Connection conn = DB.getConnection();
+		try (Statement st = conn.createStatement()) {
+			st.execute("DROP TABLE IF EXISTS seller");
+			st.execute("DROP TABLE IF EXISTS department");
+			st.execute("CREATE TABLE department (Id INT AUTO_INCREMENT PRIMARY KEY, Name VARCHAR(60), "
+					+ "Version INT NOT NULL DEFAULT 0)");
+			st.execute("CREATE TABLE seller (Id INT AUTO_INCREMENT PRIMARY KEY, Name VARCHAR(60), "
+					+ "Email VARCHAR(100), BirthDate DATETIME, BaseSalary DOUBLE, DepartmentId INT, "
+					+ "Version INT NOT NULL DEFAULT 0)");
+			st.execute("CREATE INDEX idx_seller_department ON seller (DepartmentId)");
+
+			conn.setAutoCommit(false);
+			try (PreparedStatement ps = conn.prepareStatement("INSERT INTO department (Name) VALUES (?)")) {
+				for (int i = 1; i <= departments; i++) {
+					ps.setString(1, "Department " + i);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+			}
+			try (PreparedStatement ps = conn.prepareStatement(
+					"INSERT INTO seller (Name, Email, BirthDate, BaseSalary, DepartmentId) VALUES (?, ?, ?, ?, ?)")) {
+				for (int i = 1; i <= sellers; i++) {
+					ps.setString(1, "Seller " + i);
+					ps.setString(2, "seller" + i + "@example.com");
+					ps.setDate(3, new java.sql.Date(FIRST_BIRTH_DATE + (i % 15000) * DAY_MILLIS));
+					ps.setDouble(4, 1000.0 + (i % 5000));
+					ps.setInt(5, 1 + i % departments);
+					ps.addBatch();
+					if (i % 1000 == 0) {
+						ps.executeBatch();
+					}
+				}
+				ps.executeBatch();
+			}
+			conn.commit();
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		} finally {
+			DB.closeConnection(conn);
+		}
+	}
+
+	public static void execute(String sql) {
+		Connection conn = DB.getConnection();
+		try (Statement st = conn.createStatement()) {
+			st.execute(sql);
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		} finally {
+			DB.closeConnection(conn);
+		}
+	}
+
+	public static void close() {
+		execute("DROP ALL OBJECTS");
+		DB.closeDataSource();
+	}
+}
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import gui.util.CellFormatter;
+import model.entities.Department;
+import model.entities.Seller;
+
+// One operation is one frame of a scroll in the seller table without a JavaFX toolkit: the
+// visible cells move rowsPerFrame rows down and each one renders its new row, like the
+// updateItem calls of the virtual flow. Run it with -prof gc, gc.alloc.rate.norm is the
+// allocation per frame. The legacy frame does what the cells did before: String.format,
+// a SimpleDateFormat per cell and a new handler for the Edit and Remove buttons.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CellRenderingBenchmark {
+
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+	@Param({ "100000" })
+	private int sellers;
+
+	@Param({ "30" })
+	private int visibleRows;
+
+	@Param({ "1", "10" })
+	private int rowsPerFrame;
+
+	private Seller[] rows;
+	private int top;
+
+	private SimpleDateFormat[] cellDateFormats;
+	private Runnable[] editHandlers;
+	private Runnable[] removeHandlers;
+
+	private CellFormatter<Date> dateFormatter;
+	private CellFormatter<Double> salaryFormatter;
+
+	@Setup
+	public void setUp() {
+		// Random values, so two neighbour rows never share a text
+		Random random = new Random(42);
+		Department department = new Department(1, "Department 1");
+		rows = new Seller[sellers];
+		for (int i = 0; i < sellers; i++) {
+			Date birthDate = new java.sql.Date(BenchmarkDatabase.FIRST_BIRTH_DATE + random.nextInt(15000) * DAY_MILLIS);
+			double baseSalary = 1000 + random.nextInt(900000) / 100.0;
+			rows[i] = new Seller(i + 1, "Seller " + i, "seller" + i + "@example.com", birthDate, baseSalary, department);
+		}
+
+		cellDateFormats = new SimpleDateFormat[visibleRows];
+		for (int i = 0; i < visibleRows; i++) {
+			cellDateFormats[i] = new SimpleDateFormat("dd/MM/yyyy");
+		}
+		editHandlers = new Runnable[visibleRows];
+		removeHandlers = new Runnable[visibleRows];
+
+		dateFormatter = CellFormatter.date("dd/MM/yyyy");
+		salaryFormatter = CellFormatter.decimal(2);
+	}
+
+	@Benchmark
+	public void legacyFrame(Blackhole blackhole) {
+		int first = scroll();
+		for (int i = 0; i < visibleRows; i++) {
+			Seller seller = rows[first + i];
+			blackhole.consume(cellDateFormats[i].format(seller.getBirthDate()));
+			Locale.setDefault(Locale.US);
+			blackhole.consume(String.format("%.2f", seller.getBaseSalary()));
+			editHandlers[i] = () -> blackhole.consume(seller);
+			removeHandlers[i] = () -> blackhole.consume(seller);
+		}
+	}
+
+	@Benchmark
+	public void cachedFrame(Blackhole blackhole) {
+		int first = scroll();
+		for (int i = 0; i < visibleRows; i++) {
+			Seller seller = rows[first + i];
+			blackhole.consume(dateFormatter.format(seller.getBirthDate()));
+			blackhole.consume(salaryFormatter.format(seller.getBaseSalary()));
+		}
+	}
+
+	private int scroll() {
+		top += rowsPerFrame;
+		if (top + visibleRows > rows.length) {
+			top = 0;
+		}
+		return top;
+	}
+}
@@ -0,0 +1,110 @@
+package benchmarks;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import db.DB;
+import model.dao.DepartmentCache;
+import model.dao.SellerDao;
+import model.dao.impl.SellerDaoJDBC;
+import model.entities.Department;
+import model.entities.Seller;
+
+// The JDBC DAO without the seller cache, every call goes to the database
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SellerDaoBenchmark {
+
+	@Param({ "1000", "100000" })
+	private int sellers;
+
+	@Param({ "20" })
+	private int departments;
+
+	private SellerDao dao;
+
+	// Indexed by id, the seeded rows start at version 0
+	private int[] versions;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkDatabase.create(departments, sellers);
+		dao = new SellerDaoJDBC(DB.getDataSource(), new DepartmentCache(0));
+		versions = new int[sellers + 1];
+	}
+
+	// The rows inserted by the insert benchmark are removed so the table keeps its size
+	@TearDown(Level.Iteration)
+	public void removeInserted() {
+		BenchmarkDatabase.execute("DELETE FROM seller WHERE Id > " + sellers);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		BenchmarkDatabase.close();
+	}
+
+	@Benchmark
+	public List<Seller> findAll() {
+		return dao.findAll();
+	}
+
+	@Benchmark
+	public List<Seller> findAllByDepartment() {
+		return dao.findAllByDepartment(randomDepartment());
+	}
+
+	@Benchmark
+	public Seller findById() {
+		return dao.findById(randomSellerId());
+	}
+
+	@Benchmark
+	public Seller insert() {
+		Seller seller = new Seller(null, "New seller", "new@example.com", new Date(BenchmarkDatabase.FIRST_BIRTH_DATE),
+				2000.0, randomDepartment());
+		dao.insert(seller);
+		return seller;
+	}
+
+	// The update is a compare and set on the version, the benchmark keeps the version of every
+	// seller so it never reads the row first
+	@Benchmark
+	public Seller update() {
+		int id = randomSellerId();
+		Seller seller = new Seller(id, "Seller " + id, "seller" + id + "@example.com",
+				new Date(BenchmarkDatabase.FIRST_BIRTH_DATE), 1500.0, randomDepartment());
+		seller.setVersion(versions[id]);
+		dao.update(seller);
+		versions[id] = seller.getVersion();
+		return seller;
+	}
+
+	private int randomSellerId() {
+		return 1 + ThreadLocalRandom.current().nextInt(sellers);
+	}
+
+	private Department randomDepartment() {
+		return new Department(1 + ThreadLocalRandom.current().nextInt(departments), null);
+	}
+}
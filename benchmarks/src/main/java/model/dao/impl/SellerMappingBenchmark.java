@@ -0,0 +1,101 @@
+package model.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmarks.BenchmarkDatabase;
+import db.DB;
+import model.dao.DepartmentCache;
+import model.entities.Seller;
+
+// Only the ResultSet-to-entity mapping of SellerDaoJDBC: the rows of findAll are read once
+// into an in-memory result set and every invocation maps all of them again with the
+// SellerRowMapper, whose column plan is resolved on the first invocation
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SellerMappingBenchmark {
+
+	@Param({ "10000" })
+	private int sellers;
+
+	@Param({ "20" })
+	private int departments;
+
+	private static final String SQL = "SELECT seller.*,department.Name as DepName FROM seller INNER JOIN department "
+			+ "ON seller.DepartmentId = department.Id ORDER BY Id";
+
+	private SellerRowMapper rowMapper;
+
+	private SimpleResultSet rows;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		BenchmarkDatabase.create(departments, sellers);
+		rowMapper = new SellerRowMapper(new DepartmentCache(0));
+
+		Connection conn = DB.getConnection();
+		try (PreparedStatement ps = conn.prepareStatement(SQL);
+				ResultSet rs = ps.executeQuery()) {
+			rows = copy(rs);
+		} finally {
+			DB.closeConnection(conn);
+		}
+	}
+
+	// The columns keep their labels (DepName), the row mapper finds them by label. SimpleResultSet
+	// does not convert values, so the DATETIME column is copied as the java.sql.Date the mapper reads.
+	private static SimpleResultSet copy(ResultSet rs) throws SQLException {
+		SimpleResultSet copy = new SimpleResultSet();
+		copy.setAutoClose(false);
+		ResultSetMetaData meta = rs.getMetaData();
+		int columns = meta.getColumnCount();
+		for (int i = 1; i <= columns; i++) {
+			int type = meta.getColumnType(i) == Types.TIMESTAMP ? Types.DATE : meta.getColumnType(i);
+			copy.addColumn(meta.getColumnLabel(i), type, meta.getPrecision(i), meta.getScale(i));
+		}
+		while (rs.next()) {
+			Object[] row = new Object[columns];
+			for (int i = 1; i <= columns; i++) {
+				row[i - 1] = meta.getColumnType(i) == Types.TIMESTAMP ? rs.getDate(i) : rs.getObject(i);
+			}
+			copy.addRow(row);
+		}
+		return copy;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		BenchmarkDatabase.close();
+	}
+
+	@Benchmark
+	public List<Seller> mapAll() throws SQLException {
+		rows.beforeFirst();
+		return rowMapper.mapAll(SQL, rows);
+	}
+}
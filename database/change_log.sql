@@ -0,0 +1,14 @@
+-- One row per committed insert, update or delete of a seller or a department, written by the
+-- DAOs in the transaction of the write (changeLog.enabled=true in db.properties). Every
+-- instance of the application polls the rows after the last Seq it read and drops only the
+-- changed rows from its caches and lists. The pollers delete the rows older than
+-- changeLog.retentionHours.
+CREATE TABLE change_log (
+	Seq BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+	TableName VARCHAR(20) NOT NULL,
+	RowId INT NOT NULL,
+	Operation CHAR(1) NOT NULL,
+	Origin CHAR(36) NOT NULL,
+	ChangedAt TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+	INDEX idx_change_log_changed_at (ChangedAt)
+);
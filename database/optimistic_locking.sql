@@ -0,0 +1,4 @@
+-- Version of every row for the optimistic locking of the DAOs. An update only succeeds with
+-- the version that was read (UPDATE ... WHERE Id = ? AND Version = ?) and increments it.
+ALTER TABLE seller ADD COLUMN Version INT NOT NULL DEFAULT 0;
+ALTER TABLE department ADD COLUMN Version INT NOT NULL DEFAULT 0;
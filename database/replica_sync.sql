@@ -0,0 +1,10 @@
+-- Last change of each row, used by the incremental sync of the local replica
+-- (replica.enabled=true in db.properties). MySQL sets it on every insert and on every
+-- update, the Version increment of the updates always changes the row.
+ALTER TABLE department
+	ADD COLUMN LastModified TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+	ADD INDEX idx_department_last_modified (LastModified);
+
+ALTER TABLE seller
+	ADD COLUMN LastModified TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+	ADD INDEX idx_seller_last_modified (LastModified);
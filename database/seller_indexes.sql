@@ -0,0 +1,16 @@
+-- Indexes for the seller search. The name and email filters are prefix LIKEs ('abc%'),
+-- so a B-tree index on the column can be used for them.
+CREATE INDEX idx_seller_name ON seller (Name);
+-- Email is unique: the form checks it before saving, the index rejects two sellers saved
+-- with the same email at the same time.
+CREATE UNIQUE INDEX idx_seller_email ON seller (Email);
+CREATE INDEX idx_seller_department ON seller (DepartmentId);
+CREATE INDEX idx_seller_base_salary ON seller (BaseSalary);
+
+-- Indexes for the ORDER BY of the seller table. InnoDB secondary indexes end with the
+-- primary key, so each one also serves the (column, Id) keyset order and seek.
+CREATE INDEX idx_seller_birth_date ON seller (BirthDate);
+CREATE INDEX idx_department_name ON department (Name);
+
+-- On a database created with the non unique email index, after removing the repeated emails:
+-- ALTER TABLE seller DROP INDEX idx_seller_email, ADD UNIQUE INDEX idx_seller_email (Email);
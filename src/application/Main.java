@@ -2,11 +2,17 @@ package application;
 
 import java.io.IOException;
 
+import db.DB;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.control.ScrollPane;
 import javafx.stage.Stage;
+import log.AppLog;
+import metrics.Metrics;
+import model.dao.FactoryDao;
+import model.services.FactoryService;
+import model.services.ServiceExecutor;
 
 public class Main extends Application {
 
@@ -23,11 +29,26 @@ public class Main extends Application {
 			primaryStage.setScene(mainScene);
 			primaryStage.setTitle("Sample JavaFX application");
 			primaryStage.show();
+			Startup.windowShown();
+			Startup.warmUp(loader.getController());
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	// The seller updates still in the write-behind queue get a few seconds to reach the database.
+	// Then the pool closes its connections and the slow query, metrics and application logs write
+	// the lines still queued, their writer threads are daemons and would be stopped with the JVM.
+	@Override
+	public void stop() {
+		FactoryService.shutdown(5000);
+		FactoryDao.shutdown();
+		ServiceExecutor.shutdown();
+		Metrics.shutdown();
+		DB.closeDataSource();
+		AppLog.shutdown();
+	}
+
 	public static void main(String[] args) {
 		launch(args);
 	}
@@ -0,0 +1,106 @@
+package application;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import db.DB;
+import gui.MainViewController;
+import gui.util.Alerts;
+import gui.util.FormDialog;
+import javafx.application.Platform;
+import javafx.scene.control.Alert.AlertType;
+import log.AppLog;
+import model.dao.FactoryDao;
+import model.dao.impl.ChangeLogPoller;
+import model.entities.Seller;
+import model.services.FactoryService;
+import model.services.ServiceExecutor;
+import model.services.WriteBehindQueue;
+
+// Does the slow parts of the first screens in background threads while the main window is
+// already shown: connecting the pool, loading the departments, parsing the FXML and
+// preparing the statements of the lists. When the first table gets its rows the times are
+// written to the application log.
+public class Startup {
+
+	private static final List<String> LIST_VIEWS = Arrays.asList("/gui/SellerList.fxml", "/gui/DepartmentList.fxml");
+	private static final List<String> FORM_VIEWS = Arrays.asList("/gui/SellerForm.fxml", "/gui/DepartmentForm.fxml");
+
+	private static final long launchedAt = ManagementFactory.getRuntimeMXBean().getStartTime();
+	private static final Map<String, String> steps = new ConcurrentSkipListMap<>();
+	private static final AtomicBoolean firstTableReported = new AtomicBoolean(false);
+	private static volatile long windowShownAfter = -1;
+
+	public static void windowShown() {
+		windowShownAfter = System.currentTimeMillis() - launchedAt;
+	}
+
+	public static void warmUp(MainViewController mainViewController) {
+		mainViewController.preloadViews(LIST_VIEWS);
+
+		// The statements are prepared on the connections opened by the pool for its minimum size
+		ServiceExecutor.run(timed("pool", () -> DB.prepareStatements(FactoryDao.hotStatements())));
+		ServiceExecutor.run(timed("changeLog", Startup::markChangeLog));
+		ServiceExecutor.run(timed("departments", () -> FactoryService.getDepartmentService().findAll()));
+		ServiceExecutor.run(timed("writeBehind", Startup::openWriteQueue));
+
+		Thread forms = new Thread(timed("forms", Startup::parseForms), "startup-forms");
+		forms.setDaemon(true);
+		forms.start();
+	}
+
+	// Parses the form dialogs in the background, the first Edit or New only shows them
+	private static void parseForms() {
+		try {
+			FormDialog.preload(FORM_VIEWS);
+		} catch (IOException e) {
+			throw new IllegalStateException("Error loading the forms", e);
+		}
+	}
+
+	// The first poll finds where the change log ends before the lists are read, the changes of
+	// the other instances made after it reach the lists with the next polls
+	private static void markChangeLog() {
+		ChangeLogPoller poller = FactoryDao.getChangeLogPoller();
+		if (poller != null) {
+			poller.poll();
+		}
+	}
+
+	// Replays the seller updates of the journal not flushed before the last stop. The worker
+	// thread reports the updates the database rejected, the user only saw them as saved.
+	private static void openWriteQueue() {
+		WriteBehindQueue<Seller> queue = FactoryService.getSellerWriteQueue();
+		if (queue != null) {
+			queue.setFailureListener((seller, error) -> Platform.runLater(() -> Alerts.showAlert("Seller not saved",
+					"The changes of " + seller.getName() + " were not saved", error.getMessage(), AlertType.ERROR)));
+		}
+	}
+
+	// A failed step is not reported as an error here, the screen that needs it shows the error
+	private static Runnable timed(String step, Runnable action) {
+		return () -> {
+			long start = System.nanoTime();
+			try {
+				action.run();
+				steps.put(step, (System.nanoTime() - start) / 1_000_000 + " ms");
+			} catch (RuntimeException e) {
+				steps.put(step, "failed");
+			}
+		};
+	}
+
+	// Called by the list controllers when their rows arrive, only the first call is reported
+	public static void firstTableShown() {
+		if (firstTableReported.compareAndSet(false, true)) {
+			long firstTableAfter = System.currentTimeMillis() - launchedAt;
+			AppLog.info("Startup", "window shown after " + windowShownAfter + " ms, first table after "
+					+ firstTableAfter + " ms, warm-up " + steps);
+		}
+	}
+}
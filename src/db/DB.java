@@ -3,32 +3,44 @@ package db;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collection;
 import java.util.Properties;
 
+import javax.sql.DataSource;
+
 public class DB {
 
-	private static Connection conn = null;
-	
-	// This method is responsible to connect with database 
+	private static PooledDataSource dataSource = null;
+	private static Properties properties = null;
+
+	// This method is responsible to create the connection pool with the settings of db.properties
+	public static synchronized DataSource getDataSource() {
+		if (dataSource == null) {
+			dataSource = createDataSource(getProperties());
+		}
+		return dataSource;
+	}
+
+	// Replaces the settings of db.properties, it is useful to point the DAOs to an embedded database
+	public static synchronized void configure(Properties props) {
+		closeDataSource();
+		properties = props;
+	}
+
+	// This method is responsible to borrow a connection from the pool
 	public static Connection getConnection () {
-		if (conn == null) {
-			try {
-				Properties pros = loadProperties();
-				String url = pros.getProperty("dburl");
-				conn = DriverManager.getConnection(url, pros);
-			} catch (SQLException e) {
-				throw new DbException(e.getMessage());
-			}
+		try {
+			return getDataSource().getConnection();
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
 		}
-		return conn;
 	}
-	
-	// This method is responsible to close the connection with a database
-	public static void closeConnection () {
+
+	// This method is responsible to give the connection back to the pool
+	public static void closeConnection (Connection conn) {
 		if (conn != null) {
 			try {
 				conn.close();
@@ -37,10 +49,86 @@ public class DB {
 			}
 		}
 	}
-	
-	// This method is responsible to load the properties inside the db.properties file
+
+	// This method is responsible to close all the connections of the pool
+	public static synchronized void closeDataSource () {
+		if (dataSource != null) {
+			dataSource.close();
+			dataSource = null;
+		}
+	}
+
+	// Cancels the statements running on the connections borrowed by the thread
+	public static synchronized void cancelStatements(Thread owner) {
+		if (dataSource != null) {
+			dataSource.cancelStatements(owner);
+		}
+	}
+
+	// Opens the pool if needed and keeps the statements ready in the statement cache of its connections
+	public static void prepareStatements(Collection<String> sqls) {
+		try {
+			((PooledDataSource) getDataSource()).prepareOnIdleConnections(sqls);
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+	}
+
+	// Hit and miss counters of the prepared statement caches of the pool
+	public static StatementCacheStats getStatementCacheStats() {
+		return ((PooledDataSource) getDataSource()).getStatementCacheStats();
+	}
+
+	public static synchronized Properties getProperties() {
+		if (properties == null) {
+			properties = loadProperties();
+		}
+		return properties;
+	}
+
+	// The keys with a dot (pool.maxSize, ...) are settings of the application,
+	// the other ones (user, password, useSSL, ...) are handed to the JDBC driver
+	private static PooledDataSource createDataSource(Properties props) {
+		Properties connectionProps = new Properties();
+		for (String key : props.stringPropertyNames()) {
+			if (!key.contains(".") && !key.equals("dburl")) {
+				connectionProps.setProperty(key, props.getProperty(key));
+			}
+		}
+		PooledDataSource pool = new PooledDataSource(
+				props.getProperty("dburl"),
+				connectionProps,
+				getInt(props, "pool.minSize", 1),
+				getInt(props, "pool.maxSize", 10),
+				getInt(props, "pool.borrowTimeoutMillis", 5000),
+				getInt(props, "pool.validationTimeoutSeconds", 2),
+				getInt(props, "pool.idleTimeoutMillis", 300000),
+				getInt(props, "pool.statementCacheSize", 32));
+		pool.setSlowQueryLog(SlowQueryLog.create(props));
+		return pool;
+	}
+
+	// A unique index violation: SQLState 23000 with error 1062 on MySQL, 23505 on the other databases
+	public static boolean isDuplicateKey(SQLException e) {
+		return "23505".equals(e.getSQLState()) || ("23000".equals(e.getSQLState()) && e.getErrorCode() == 1062);
+	}
+
+	public static int getInt(Properties props, String key, int defaultValue) {
+		String value = props.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new DbException("Invalid value for " + key + ": " + value);
+		}
+	}
+
+	// This method is responsible to load the properties inside the db.properties file,
+	// the system property db.config can point to another file
 	private static Properties loadProperties() {
-		try(FileInputStream fs = new FileInputStream("db.properties")){
+		try(FileInputStream fs = new FileInputStream(System.getProperty("db.config", "db.properties"))){
 			Properties props = new Properties();
 			props.load(fs);
 			return props;
@@ -48,7 +136,7 @@ public class DB {
 			throw new DbException(e.getMessage());
 		}
 	}
-	
+
 	public static void closeStatement (Statement st) {
 		if (st != null) {
 			try {
@@ -58,7 +146,7 @@ public class DB {
 			}
 		}
 	}
-	
+
 	public static void closeResultSet (ResultSet resultSet) {
 		if (resultSet != null) {
 			try {
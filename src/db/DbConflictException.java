@@ -0,0 +1,19 @@
+package db;
+
+// An update that found another version of the row: it was saved by someone else after it
+// was read. The row as it is now in the database goes with the exception, null when it was deleted.
+public class DbConflictException extends DbException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient Object current;
+
+	public DbConflictException(String msg, Object current) {
+		super(msg);
+		this.current = current;
+	}
+
+	public Object getCurrent() {
+		return current;
+	}
+}
@@ -0,0 +1,13 @@
+package db;
+
+import java.sql.SQLException;
+
+// An insert or update that would repeat the value of a unique index, like the email of another seller
+public class DbDuplicateKeyException extends DbException {
+
+	private static final long serialVersionUID = 1L;
+
+	public DbDuplicateKeyException(String msg, SQLException cause) {
+		super(msg, cause);
+	}
+}
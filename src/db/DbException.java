@@ -1,5 +1,10 @@
 package db;
 
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+
 public class DbException extends RuntimeException {
 
 	private static final long serialVersionUID = 1L;
@@ -7,4 +12,26 @@ public class DbException extends RuntimeException {
 	public DbException(String msg) {
 		super(msg);
 	}
-}
\ No newline at end of file
+
+	// The error of the driver is kept, it tells whether the statement can work later
+	public DbException(String msg, SQLException cause) {
+		super(msg, cause);
+	}
+
+	// True for an error of the connection (SQLState class 08), a transaction rolled back by the
+	// database (class 40, like a deadlock) or an error that does not come from the driver, like
+	// the timeout of the pool: the same statement can work later. False when the database
+	// refused the data itself: a constraint, a value too long...
+	public boolean isTransient() {
+		if (!(getCause() instanceof SQLException)) {
+			return true;
+		}
+		SQLException cause = (SQLException) getCause();
+		if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException
+				|| cause instanceof SQLNonTransientConnectionException) {
+			return true;
+		}
+		String state = cause.getSQLState();
+		return state == null || state.startsWith("08") || state.startsWith("40");
+	}
+}
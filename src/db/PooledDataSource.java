@@ -0,0 +1,429 @@
+package db;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+// A bounded pool of physical connections. Every call to getConnection borrows one
+// connection and the close() of the returned object gives it back to the pool.
+public class PooledDataSource implements DataSource {
+
+	private final String url;
+	private final Properties connectionProps;
+	private final int minSize;
+	private final int maxSize;
+	private final long borrowTimeoutMillis;
+	private final int validationTimeoutSeconds;
+	private final long idleTimeoutMillis;
+	private final int statementCacheSize;
+	private final StatementCacheStats statementCacheStats = new StatementCacheStats();
+
+	// Idle connections, the most recently used one is always at the head
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	// One permit for each connection that can still be borrowed
+	private final Semaphore permits;
+	private final AtomicInteger totalConnections = new AtomicInteger();
+	// The connections borrowed and not given back yet
+	private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService evictor;
+
+	private volatile boolean closed = false;
+
+	// Null when the slow query log is off
+	private volatile SlowQueryLog slowQueryLog = null;
+
+	public PooledDataSource(String url, Properties connectionProps, int minSize, int maxSize,
+			long borrowTimeoutMillis, int validationTimeoutSeconds, long idleTimeoutMillis, int statementCacheSize) {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+		}
+		this.url = url;
+		this.connectionProps = connectionProps;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+
+		this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "db-pool-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(1000L, idleTimeoutMillis / 2);
+		evictor.scheduleWithFixedDelay(this::evictIdleConnections, period, period, TimeUnit.MILLISECONDS);
+
+		fillToMinimum();
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("The connection pool is closed");
+		}
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new SQLException("Timeout waiting for a connection after " + borrowTimeoutMillis
+						+ " ms (max pool size " + maxSize + ")");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection");
+		}
+
+		try {
+			PooledConnection pooled = takeValidConnection();
+			return pooled.lease();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	// Reuses an idle connection when it is still alive, otherwise opens a new one
+	private PooledConnection takeValidConnection() throws SQLException {
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			if (pooled.isAlive(validationTimeoutSeconds)) {
+				return pooled;
+			}
+			discard(pooled);
+		}
+		return open();
+	}
+
+	private PooledConnection open() throws SQLException {
+		Connection physical = DriverManager.getConnection(url, connectionProps);
+		totalConnections.incrementAndGet();
+		return new PooledConnection(physical);
+	}
+
+	private void discard(PooledConnection pooled) {
+		totalConnections.decrementAndGet();
+		pooled.closePhysical();
+	}
+
+	// Called by the leased connection when the DAO closes it
+	private void release(PooledConnection pooled) {
+		try {
+			if (closed || pooled.physical.isClosed()) {
+				discard(pooled);
+				return;
+			}
+			if (!pooled.physical.getAutoCommit()) {
+				pooled.physical.rollback();
+				pooled.physical.setAutoCommit(true);
+			}
+			pooled.lastUsed = System.currentTimeMillis();
+			idle.offerFirst(pooled);
+		} catch (SQLException e) {
+			discard(pooled);
+		} finally {
+			permits.release();
+		}
+	}
+
+	// Cancels the statements of the connections borrowed by the thread and not given back yet,
+	// like a search superseded by the next keystroke. The driver may open another connection
+	// to send the cancel, so it runs on the evictor thread and the caller does not wait.
+	public void cancelStatements(Thread owner) {
+		for (Lease lease : leases) {
+			if (lease.owner == owner) {
+				try {
+					evictor.execute(lease::cancelStatements);
+				} catch (RejectedExecutionException e) {
+					// The pool is closed
+				}
+			}
+		}
+	}
+
+	// Closes the connections that stayed idle for too long, but always keeps the minimum size
+	private void evictIdleConnections() {
+		long now = System.currentTimeMillis();
+		Iterator<PooledConnection> it = idle.descendingIterator();
+		while (it.hasNext() && totalConnections.get() > minSize) {
+			PooledConnection pooled = it.next();
+			if (now - pooled.lastUsed > idleTimeoutMillis && idle.remove(pooled)) {
+				discard(pooled);
+			}
+		}
+		fillToMinimum();
+	}
+
+	private void fillToMinimum() {
+		try {
+			while (!closed && totalConnections.get() < minSize) {
+				idle.offerLast(open());
+			}
+		} catch (SQLException e) {
+			// The database is not reachable right now, the next borrow will report the error
+		}
+	}
+
+	public void close() {
+		closed = true;
+		evictor.shutdownNow();
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			discard(pooled);
+		}
+		if (slowQueryLog != null) {
+			slowQueryLog.close();
+		}
+	}
+
+	// Every statement of the connections borrowed from now on is timed by the log
+	public void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+		this.slowQueryLog = slowQueryLog;
+	}
+
+	// Borrows every idle connection at the same time and prepares the statements on each one,
+	// closing them puts them in the statement cache of that connection
+	public void prepareOnIdleConnections(Collection<String> sqls) throws SQLException {
+		List<Connection> borrowed = new ArrayList<>();
+		try {
+			int count = idle.size();
+			for (int i = 0; i < count; i++) {
+				borrowed.add(getConnection());
+			}
+			for (Connection conn : borrowed) {
+				for (String sql : sqls) {
+					conn.prepareStatement(sql).close();
+				}
+			}
+		} finally {
+			for (Connection conn : borrowed) {
+				conn.close();
+			}
+		}
+	}
+
+	public StatementCacheStats getStatementCacheStats() {
+		return statementCacheStats;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getTotalConnections() {
+		return totalConnections.get();
+	}
+
+	public int getIdleConnections() {
+		return idle.size();
+	}
+
+	public int getActiveConnections() {
+		return maxSize - permits.availablePermits();
+	}
+
+	public int getWaitingThreads() {
+		return permits.getQueueLength();
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("The pool only hands out connections for the configured user");
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return DriverManager.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		DriverManager.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		DriverManager.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return DriverManager.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException("Not a wrapper for " + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+
+	// A physical connection owned by the pool
+	private class PooledConnection {
+
+		private final Connection physical;
+		private final StatementCache statementCache;
+		private volatile long lastUsed = System.currentTimeMillis();
+
+		private PooledConnection(Connection physical) {
+			this.physical = physical;
+			this.statementCache = statementCacheSize > 0
+					? new StatementCache(physical, statementCacheSize, statementCacheStats)
+					: null;
+		}
+
+		private boolean isAlive(int timeoutSeconds) {
+			try {
+				return physical.isValid(timeoutSeconds);
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		private void closePhysical() {
+			try {
+				if (statementCache != null) {
+					statementCache.clear();
+				}
+				physical.close();
+			} catch (SQLException e) {
+				// Nothing to do, the connection is being thrown away
+			}
+		}
+
+		private Connection lease() {
+			Lease lease = new Lease(this);
+			leases.add(lease);
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, lease);
+		}
+	}
+
+	// Only prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys) go through the cache,
+	// the variants with cursor options are used for special reads and are not reused
+	private static boolean isCacheable(Method method) {
+		Class<?>[] types = method.getParameterTypes();
+		return types.length == 1 || (types.length == 2 && types[1] == int.class);
+	}
+
+	// The handle given to the caller, it is valid until close() is called once
+	private class Lease implements InvocationHandler {
+
+		private final Thread owner = Thread.currentThread();
+		// The statements created with the lease, guarded by this
+		private final List<Statement> statements = new ArrayList<>();
+		private volatile PooledConnection pooled;
+
+		private Lease(PooledConnection pooled) {
+			this.pooled = pooled;
+		}
+
+		// Holding the lock, the connection can not go back to the pool and run the statements
+		// of another thread while they are cancelled
+		private synchronized void cancelStatements() {
+			if (pooled == null) {
+				return;
+			}
+			for (Statement statement : statements) {
+				try {
+					statement.cancel();
+				} catch (SQLException e) {
+					// The statement is closed or already finished
+				}
+			}
+		}
+
+		private synchronized PooledConnection giveBack() {
+			PooledConnection returned = pooled;
+			pooled = null;
+			statements.clear();
+			leases.remove(this);
+			return returned;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("close")) {
+				PooledConnection returned = giveBack();
+				if (returned != null) {
+					release(returned);
+				}
+				return null;
+			}
+			if (name.equals("isClosed")) {
+				return pooled == null || pooled.physical.isClosed();
+			}
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			if (name.equals("toString")) {
+				return "PooledConnection[" + (pooled == null ? "closed" : pooled.physical) + "]";
+			}
+			if (pooled == null) {
+				throw new SQLException("Connection has already been returned to the pool");
+			}
+			Object result;
+			if (name.equals("prepareStatement") && pooled.statementCache != null && isCacheable(method)) {
+				int autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+				result = pooled.statementCache.prepare((Connection) proxy, (String) args[0], autoGeneratedKeys);
+			} else {
+				try {
+					result = method.invoke(pooled.physical, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+
+			if (result instanceof Statement) {
+				synchronized (this) {
+					statements.add((Statement) result);
+				}
+			}
+
+			SlowQueryLog log = slowQueryLog;
+			if (log != null && result instanceof Statement) {
+				String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+				return log.wrap((Statement) result, (Connection) proxy, sql);
+			}
+			return result;
+		}
+	}
+}
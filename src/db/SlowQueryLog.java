@@ -0,0 +1,286 @@
+package db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Properties;
+
+import log.AsyncFileAppender;
+
+// Times the statements of the pooled connections and logs the ones slower than
+// log.slowQueryMillis: duration, rows returned or affected, the DAO method that ran it,
+// the SQL and the bind values. Only integers and booleans (ids, limits, flags) are written,
+// the other bind values are replaced by their type unless log.redactBindValues=false.
+// The time of a query includes reading its rows, which is where a big result spends it.
+public class SlowQueryLog {
+
+	private final long thresholdNanos;
+	private final boolean redact;
+	private final AsyncFileAppender appender;
+
+	private SlowQueryLog(long thresholdMillis, boolean redact, AsyncFileAppender appender) {
+		this.thresholdNanos = thresholdMillis * 1_000_000L;
+		this.redact = redact;
+		this.appender = appender;
+	}
+
+	// Null when log.slowQueryMillis is negative, then the statements are not wrapped at all
+	public static SlowQueryLog create(Properties props) {
+		int thresholdMillis = DB.getInt(props, "log.slowQueryMillis", 200);
+		if (thresholdMillis < 0) {
+			return null;
+		}
+		AsyncFileAppender appender = new AsyncFileAppender(
+				props.getProperty("log.slowQueryFile", "slow-queries.log"),
+				DB.getInt(props, "log.maxFileBytes", 10 * 1024 * 1024),
+				DB.getInt(props, "log.maxFiles", 5),
+				DB.getInt(props, "log.queueCapacity", 1024));
+		boolean redact = !"false".equalsIgnoreCase(props.getProperty("log.redactBindValues", "true").trim());
+		return new SlowQueryLog(thresholdMillis, redact, appender);
+	}
+
+	public void close() {
+		appender.close();
+	}
+
+	// The proxy implements the same JDBC interface as the statement, sql is null for a plain Statement
+	Statement wrap(Statement statement, Connection owner, String sql) {
+		Class<?> iface = statement instanceof CallableStatement ? CallableStatement.class
+				: statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+		return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { iface },
+				new TimedStatement(statement, owner, sql));
+	}
+
+	private void log(long nanos, long rows, String sql, Object[] binds, int bindCount) {
+		StringBuilder line = new StringBuilder(256)
+				.append(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS))
+				.append(' ').append(String.format("%.1f", nanos / 1_000_000.0)).append("ms")
+				.append(" rows=").append(rows < 0 ? "?" : String.valueOf(rows))
+				.append(' ').append(caller())
+				.append(" [");
+		// One line per statement
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			line.append(Character.isWhitespace(c) ? ' ' : c);
+		}
+		line.append(']');
+		if (bindCount > 0) {
+			line.append(" binds=[");
+			for (int i = 0; i < bindCount; i++) {
+				if (i > 0) {
+					line.append(", ");
+				}
+				appendBind(line, binds[i]);
+			}
+			line.append(']');
+		}
+		appender.append(line.toString());
+	}
+
+	private void appendBind(StringBuilder line, Object value) {
+		if (value == null) {
+			line.append("NULL");
+		} else if (!redact || value instanceof Integer || value instanceof Long || value instanceof Boolean) {
+			line.append(value);
+		} else if (value instanceof String) {
+			line.append("<String:").append(((String) value).length()).append('>');
+		} else {
+			line.append('<').append(value.getClass().getSimpleName()).append('>');
+		}
+	}
+
+	// The first class of the stack that implements a DAO interface, e.g. SellerDaoJDBC.findAll,
+	// otherwise the first frame outside of the db package and the JDK
+	private static String caller() {
+		Optional<StackWalker.StackFrame> frame = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE)
+				.walk(frames -> frames.filter(SlowQueryLog::isDaoFrame).findFirst());
+		if (!frame.isPresent()) {
+			frame = StackWalker.getInstance().walk(frames -> frames
+					.filter(f -> !f.getClassName().startsWith("db.") && !f.getClassName().startsWith("java.")
+							&& !f.getClassName().startsWith("jdk.") && !f.getClassName().startsWith("com.sun."))
+					.findFirst());
+		}
+		return frame.map(f -> f.getClassName().substring(f.getClassName().lastIndexOf('.') + 1) + "."
+				+ f.getMethodName()).orElse("?");
+	}
+
+	private static boolean isDaoFrame(StackWalker.StackFrame frame) {
+		for (Class<?> iface : frame.getDeclaringClass().getInterfaces()) {
+			if (iface.getSimpleName().endsWith("Dao")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// One statement runs one execution at a time, so the state of the current one is kept
+	// in fields and the ResultSet reports its rows back here
+	private class TimedStatement implements InvocationHandler {
+
+		private final Statement statement;
+		private final Connection owner;
+		private final String preparedSql;
+
+		private Object[] binds = new Object[8];
+		private int bindCount = 0;
+
+		private boolean running = false;
+		private String sql;
+		private long nanos;
+		private long rows;
+
+		private TimedStatement(Statement statement, Connection owner, String preparedSql) {
+			this.statement = statement;
+			this.owner = owner;
+			this.preparedSql = preparedSql;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.startsWith("execute")) {
+				return execute(proxy, method, args);
+			}
+			if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+					&& method.getDeclaringClass() != Statement.class) {
+				bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+			} else if (name.equals("clearParameters")) {
+				Arrays.fill(binds, 0, bindCount, null);
+				bindCount = 0;
+			} else if (name.equals("close")) {
+				finish();
+			} else if (name.equals("getConnection")) {
+				return owner;
+			} else if (name.equals("equals")) {
+				return proxy == args[0];
+			} else if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			Object result = invokeTarget(statement, method, args);
+			if (name.equals("getResultSet") && result != null && running) {
+				return wrapResultSet((ResultSet) result, proxy);
+			}
+			return result;
+		}
+
+		private Object execute(Object proxy, Method method, Object[] args) throws Throwable {
+			finish();
+			sql = (args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : preparedSql;
+			if (sql == null) {
+				// executeBatch of a plain Statement
+				sql = "(batch)";
+			}
+			rows = -1;
+			long start = System.nanoTime();
+			Object result;
+			try {
+				result = invokeTarget(statement, method, args);
+			} finally {
+				nanos = System.nanoTime() - start;
+				running = true;
+			}
+
+			if (result instanceof ResultSet) {
+				rows = 0;
+				return wrapResultSet((ResultSet) result, proxy);
+			}
+			if (result instanceof int[]) {
+				rows = sum((int[]) result);
+			} else if (result instanceof long[]) {
+				rows = sum((long[]) result);
+			} else if (result instanceof Number) {
+				rows = ((Number) result).longValue();
+			} else if (Boolean.FALSE.equals(result)) {
+				rows = statement.getUpdateCount();
+			} else if (Boolean.TRUE.equals(result)) {
+				// The rows are counted when the caller asks for the result set
+				rows = 0;
+				return result;
+			}
+			finish();
+			return result;
+		}
+
+		private ResultSet wrapResultSet(ResultSet rs, Object statementProxy) {
+			return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+					new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+						String name = method.getName();
+						if (name.equals("next")) {
+							long start = System.nanoTime();
+							Object hasRow = invokeTarget(rs, method, args);
+							nanos += System.nanoTime() - start;
+							if ((Boolean) hasRow) {
+								rows++;
+							}
+							return hasRow;
+						}
+						if (name.equals("close")) {
+							finish();
+						} else if (name.equals("getStatement")) {
+							return statementProxy;
+						} else if (name.equals("equals")) {
+							return proxy == args[0];
+						} else if (name.equals("hashCode")) {
+							return System.identityHashCode(proxy);
+						}
+						return invokeTarget(rs, method, args);
+					});
+		}
+
+		// Logs the current execution once, when it is over
+		private void finish() {
+			if (running) {
+				running = false;
+				if (nanos >= thresholdNanos) {
+					log(nanos, rows, sql, binds, sql == preparedSql ? bindCount : 0);
+				}
+			}
+		}
+
+		private void bind(int index, Object value) {
+			if (index < 1 || index > 1000) {
+				return;
+			}
+			if (index > binds.length) {
+				binds = Arrays.copyOf(binds, Math.max(index, binds.length * 2));
+			}
+			binds[index - 1] = value;
+			bindCount = Math.max(bindCount, index);
+		}
+	}
+
+	private static long sum(int[] counts) {
+		long total = 0;
+		for (int count : counts) {
+			// SUCCESS_NO_INFO and EXECUTE_FAILED are negative
+			total += Math.max(0, count);
+		}
+		return total;
+	}
+
+	private static long sum(long[] counts) {
+		long total = 0;
+		for (long count : counts) {
+			total += Math.max(0, count);
+		}
+		return total;
+	}
+
+	private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+// Keeps the prepared statements of one physical connection open between the DAO calls.
+// The statements are keyed by SQL text and generated keys mode, and the least recently
+// used one is closed when the cache is full. A statement is removed from the cache while
+// it is in use and its close() puts it back.
+class StatementCache {
+
+	private final Connection physical;
+	private final int maxSize;
+	private final StatementCacheStats stats;
+	private final LinkedHashMap<Key, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+	StatementCache(Connection physical, int maxSize, StatementCacheStats stats) {
+		this.physical = physical;
+		this.maxSize = maxSize;
+		this.stats = stats;
+	}
+
+	PreparedStatement prepare(Connection owner, String sql, int autoGeneratedKeys) throws SQLException {
+		Key key = new Key(sql, autoGeneratedKeys);
+		PreparedStatement ps;
+		synchronized (this) {
+			ps = statements.remove(key);
+		}
+		if (ps != null) {
+			stats.hit();
+		} else {
+			stats.miss();
+			ps = physical.prepareStatement(sql, autoGeneratedKeys);
+		}
+		return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+				new Class<?>[] { PreparedStatement.class }, new CachedStatement(owner, key, ps));
+	}
+
+	private void giveBack(Key key, PreparedStatement ps) {
+		try {
+			ps.clearParameters();
+			ps.clearBatch();
+		} catch (SQLException e) {
+			closeQuietly(ps);
+			return;
+		}
+
+		PreparedStatement evicted = null;
+		synchronized (this) {
+			if (statements.containsKey(key)) {
+				// The same SQL was prepared twice at the same time, one copy is enough
+				evicted = ps;
+			} else {
+				statements.put(key, ps);
+				if (statements.size() > maxSize) {
+					Iterator<PreparedStatement> eldest = statements.values().iterator();
+					evicted = eldest.next();
+					eldest.remove();
+				}
+			}
+		}
+		if (evicted != null) {
+			stats.evicted();
+			closeQuietly(evicted);
+		}
+	}
+
+	synchronized void clear() {
+		for (PreparedStatement ps : statements.values()) {
+			closeQuietly(ps);
+		}
+		statements.clear();
+	}
+
+	private static void closeQuietly(PreparedStatement ps) {
+		try {
+			ps.close();
+		} catch (SQLException e) {
+			// The statement is being thrown away
+		}
+	}
+
+	private static final class Key {
+
+		private final String sql;
+		private final int autoGeneratedKeys;
+
+		private Key(String sql, int autoGeneratedKeys) {
+			this.sql = sql;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(sql, autoGeneratedKeys);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return autoGeneratedKeys == other.autoGeneratedKeys && sql.equals(other.sql);
+		}
+	}
+
+	// The handle given to the DAO, close() returns the statement to the cache
+	private class CachedStatement implements InvocationHandler {
+
+		private final Connection owner;
+		private final Key key;
+		private PreparedStatement ps;
+
+		private CachedStatement(Connection owner, Key key, PreparedStatement ps) {
+			this.owner = owner;
+			this.key = key;
+			this.ps = ps;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("close")) {
+				if (ps != null) {
+					PreparedStatement returned = ps;
+					ps = null;
+					giveBack(key, returned);
+				}
+				return null;
+			}
+			if (name.equals("isClosed")) {
+				return ps == null;
+			}
+			if (name.equals("getConnection")) {
+				return owner;
+			}
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			if (ps == null) {
+				throw new SQLException("Statement is closed");
+			}
+			try {
+				return method.invoke(ps, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package db;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counters shared by the statement caches of all the connections of the pool
+public class StatementCacheStats {
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	void hit() {
+		hits.incrementAndGet();
+	}
+
+	void miss() {
+		misses.incrementAndGet();
+	}
+
+	void evicted() {
+		evictions.incrementAndGet();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "StatementCacheStats [hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+}
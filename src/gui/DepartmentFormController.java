@@ -7,10 +7,13 @@ import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 
-import db.DbException;
+import db.DbConflictException;
+import gui.listeners.DataChangeEvent;
 import gui.listeners.DataChangeListener;
 import gui.util.Alerts;
 import gui.util.Constraints;
+import gui.util.FieldMerge;
+import gui.util.FxTasks;
 import gui.util.Utils;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -19,15 +22,17 @@ import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
+import javafx.stage.Stage;
 import model.entities.Department;
 import model.exceptions.ValidationException;
+import model.services.DepartmentRules;
 import model.services.DepartmentService;
 
 public class DepartmentFormController implements Initializable {
 
 	private DepartmentService departmentService;
 	private Department departmentEntity;
-	private List<DataChangeListener> dataChangeListeners = new ArrayList<>();
+	private List<DataChangeListener<Department>> dataChangeListeners = new ArrayList<>();
 
 	@FXML
 	private TextField txtId;
@@ -46,10 +51,15 @@ public class DepartmentFormController implements Initializable {
 
 	// Objects that implements DataChangeListener can subscribe to receive the event
 	// from this class
-	public void subscribeDataChangeListener(DataChangeListener listener) {
+	public void subscribeDataChangeListener(DataChangeListener<Department> listener) {
 		dataChangeListeners.add(listener);
 	}
 
+	// The dialog is reused, the list that opens it subscribes again every time
+	public void clearDataChangeListeners() {
+		dataChangeListeners.clear();
+	}
+
 	@FXML
 	public void onBtSaveAction(ActionEvent actionEvent) {
 		if (departmentEntity == null) {
@@ -59,46 +69,91 @@ public class DepartmentFormController implements Initializable {
 			throw new IllegalStateException("Department Service is null");
 		}
 
+		// The entity stays the row the form was opened with until the save succeeds,
+		// it is the base of the merge when another user saved it in the meantime
+		Department saved;
 		try {
-			departmentEntity = getFormData();
-			departmentService.saveOrUpdate(departmentEntity);
+			saved = getFormData();
+		} catch (ValidationException e) {
+			setErrorMessages(e.getErros());
+			return;
+		}
+
+		// The listeners are told if the entity is new or an existing one
+		DataChangeEvent.Type changeType = saved.getId() == null
+				? DataChangeEvent.Type.INSERTED
+				: DataChangeEvent.Type.UPDATED;
+
+		// The save runs in the background, the buttons stay disabled until it finishes
+		Stage stage = Utils.currentStage(actionEvent);
+		setButtonsDisabled(true);
+		FxTasks.onFxThread(departmentService.saveOrUpdateAsync(saved), done -> {
+			setButtonsDisabled(false);
+			departmentEntity = saved;
 			// when we have the action of save or update
 			// we need to notify the listeners from the list
 			// about the change
-			notifyDataChangeListeners();
+			notifyDataChangeListeners(new DataChangeEvent<>(changeType, saved, saved.getId()));
 			// to close the window after the action
-			Utils.currentStage(actionEvent).close();
-		}
-		catch (ValidationException e) {
-			setErrorMessages(e.getErros());
-		}
-		catch (DbException e) {
-			Alerts.showAlert("Error saving objetc", null, e.getMessage(), AlertType.ERROR);
+			stage.close();
+		}, error -> {
+			setButtonsDisabled(false);
+			if (error instanceof DbConflictException) {
+				resolveConflict(saved, (Department) ((DbConflictException) error).getCurrent(), stage);
+				return;
+			}
+			Alerts.showAlert("Error saving objetc", null, error.getMessage(), AlertType.ERROR);
+		});
+	}
+
+	// Another user saved the department after the form was opened. Both changes are merged in
+	// the form and the current row becomes the base, so the next save goes over its version.
+	private void resolveConflict(Department mine, Department current, Stage stage) {
+		if (current == null) {
+			Alerts.showAlert("Department removed", null, "The department was removed by another user",
+					AlertType.WARNING);
+			notifyDataChangeListeners(
+					new DataChangeEvent<>(DataChangeEvent.Type.REMOVED, departmentEntity, departmentEntity.getId()));
+			stage.close();
+			return;
 		}
+
+		FieldMerge merge = new FieldMerge();
+		String name = merge.merge("name", departmentEntity.getName(), mine.getName(), current.getName());
+		departmentEntity = current;
+		txtName.setText(name);
+		lbError.setText("");
+		setErrorMessages(merge.getConflicts());
+
+		// The list shows the current row while the form is open
+		notifyDataChangeListeners(new DataChangeEvent<>(DataChangeEvent.Type.UPDATED, current, current.getId()));
+		Alerts.showAlert("Department changed", null, "Another user saved this department while you were editing it. "
+				+ (merge.getConflicts().isEmpty()
+						? "The changes were merged, check them and save again."
+						: "Save again to keep your value."),
+				AlertType.INFORMATION);
 	}
 
-	private void notifyDataChangeListeners() {
-		for (DataChangeListener listener : dataChangeListeners) {
-			listener.onDataChanged();
+	private void setButtonsDisabled(boolean disabled) {
+		btSave.setDisable(disabled);
+		btCancel.setDisable(disabled);
+	}
+
+	private void notifyDataChangeListeners(DataChangeEvent<Department> event) {
+		for (DataChangeListener<Department> listener : dataChangeListeners) {
+			listener.onDataChanged(event);
 		}
 	}
 
 	private Department getFormData() {
 		Department department = new Department();
 
-		ValidationException exceptionError = new ValidationException("Validation Error");
-
 		department.setId(Utils.tryParseToInt(txtId.getText()));
-
-		if (txtName.getText() == null || txtName.getText().trim().equals("")) {
-			exceptionError.addErrors("name", "Field can not be empty");
-		}
+		department.setVersion(departmentEntity.getVersion());
 		department.setName(txtName.getText());
-		
-		if (exceptionError.getErros().size() > 0) {
-			throw exceptionError;
-		}
 
+		// The same rules checked by DepartmentService
+		DepartmentRules.VALIDATOR.validate(department);
 		return department;
 	}
 
@@ -114,7 +169,7 @@ public class DepartmentFormController implements Initializable {
 
 	private void initializeFields() {
 		Constraints.setTextFieldInteger(txtId);
-		Constraints.setTextFieldMaxLength(txtName, 30);
+		Constraints.setTextField(txtName, DepartmentRules.NAME);
 	}
 
 	public void setDepartment(Department departmentEntity) {
@@ -129,8 +184,11 @@ public class DepartmentFormController implements Initializable {
 		if (departmentEntity == null) {
 			throw new IllegalStateException("Department entity is null");
 		}
-		txtId.setText(String.valueOf(departmentEntity.getId()));
-		txtName.setText(departmentEntity.getName());
+		// The fields reject a text outside their input pattern, like "null"
+		txtId.setText(departmentEntity.getId() == null ? "" : String.valueOf(departmentEntity.getId()));
+		txtName.setText(departmentEntity.getName() == null ? "" : departmentEntity.getName());
+		// The message of the last time the dialog was open
+		lbError.setText("");
 	}
 	
 	private void setErrorMessages(Map<String, String> errors) {
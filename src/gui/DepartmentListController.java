@@ -2,42 +2,56 @@ package gui;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import application.Main;
-import db.DbException;
+import application.Startup;
+import gui.listeners.DataChangeEvent;
 import gui.listeners.DataChangeListener;
 import gui.util.Alerts;
+import gui.util.DisposableView;
+import gui.util.FormDialog;
+import gui.util.FxTasks;
 import gui.util.Utils;
-import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Scene;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
-import javafx.scene.control.TableCell;
+import javafx.scene.control.Label;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.scene.layout.Pane;
-import javafx.stage.Modality;
 import javafx.stage.Stage;
+import model.dao.ChangeLogEntry;
+import model.dao.FactoryDao;
+import model.dao.impl.ChangeLogPoller;
 import model.entities.Department;
 import model.services.DepartmentService;
+import model.services.FactoryService;
 
-public class DepartmentListController implements Initializable, DataChangeListener {
+public class DepartmentListController implements Initializable, DataChangeListener<Department>, DisposableView {
 
 	private DepartmentService service;
 
 	private ObservableList<Department> obsDepartment;
 
+	private CompletableFuture<List<Department>> pendingLoad;
+
+	// Kept to be removed from the poller when the view is dropped
+	private final Consumer<List<ChangeLogEntry>> remoteChanges =
+			changes -> Platform.runLater(() -> onRemoteChanges(changes));
+
 	@FXML
 	private Button btNew;
 
@@ -73,10 +87,22 @@ public class DepartmentListController implements Initializable, DataChangeListen
 		// Initializing the column on the window as default
 		tableColumnId.setCellValueFactory(new PropertyValueFactory<>("id"));
 		tableColumnName.setCellValueFactory(new PropertyValueFactory<>("name"));
+		Utils.formatTableColumnButton(tableColumnEDIT, "Edit",
+				(department, event) -> createDialogForm(department, "/gui/DepartmentForm.fxml", Utils.currentStage(event)));
+		Utils.formatTableColumnButton(tableColumnREMOVE, "Remove", (department, event) -> removeEntity(department));
+
+		// Saved by the other instances of the application, only the changed rows are patched
+		ChangeLogPoller poller = FactoryDao.getChangeLogPoller();
+		if (poller != null) {
+			poller.addListener(ChangeLogEntry.DEPARTMENT, remoteChanges);
+		}
 
-		// To resize the table view as the window
-		Stage stage = (Stage) Main.getMainScene().getWindow();
-		tableViewDepartment.prefHeightProperty().bind(stage.heightProperty());
+		// To resize the table view as the window. The view can be loaded by the preload
+		// thread of the view cache, the window belongs to the JavaFX Application Thread.
+		Platform.runLater(() -> {
+			Stage stage = (Stage) Main.getMainScene().getWindow();
+			tableViewDepartment.prefHeightProperty().bind(stage.heightProperty());
+		});
 	}
 
 	// With this method the developer can make dependency injection
@@ -88,33 +114,42 @@ public class DepartmentListController implements Initializable, DataChangeListen
 		if (service == null) {
 			throw new IllegalStateException("Service is null");
 		}
-		List<Department> listDept = service.findAll();
-		obsDepartment = FXCollections.observableArrayList(listDept);
-		tableViewDepartment.setItems(obsDepartment);
+		// A new refresh cancels the one still running
+		FxTasks.cancel(pendingLoad);
+		tableViewDepartment.setPlaceholder(new Label("Loading..."));
+
+		pendingLoad = FxTasks.onFxThread(service.findAllAsync(), listDept -> {
+			obsDepartment = FXCollections.observableArrayList(listDept);
+			tableViewDepartment.setItems(obsDepartment);
+			tableViewDepartment.setPlaceholder(new Label("No departments"));
+			Startup.firstTableShown();
+		}, FxTasks.alertOnError("Error loading departments"));
+	}
 
-		initEditButtons();
-		initRemoveButtons();
+	// The view cache dropped the view, the poller would keep this controller alive
+	@Override
+	public void dispose() {
+		ChangeLogPoller poller = FactoryDao.getChangeLogPoller();
+		if (poller != null) {
+			poller.removeListener(ChangeLogEntry.DEPARTMENT, remoteChanges);
+		}
+		FxTasks.cancel(pendingLoad);
 	}
 
 	private void createDialogForm(Department department, String absoluteName, Stage parentStage) {
 		try {
 
-			FXMLLoader loader = new FXMLLoader(getClass().getResource(absoluteName));
-			Pane pane = loader.load();
+			// The form is parsed once, every open binds it to the department
+			FormDialog<DepartmentFormController> dialog = FormDialog.get(absoluteName, "Enter with department data");
 
-			DepartmentFormController controller = loader.getController();
+			DepartmentFormController controller = dialog.getController();
 			controller.setDepartment(department);
-			controller.setDepartmentService(new DepartmentService());
+			controller.setDepartmentService(FactoryService.getDepartmentService());
+			controller.clearDataChangeListeners();
 			controller.subscribeDataChangeListener(this);
 			controller.updateFormData();
 
-			Stage dialogStage = new Stage();
-			dialogStage.setTitle("Enter with department data");
-			dialogStage.setScene(new Scene(pane));
-			dialogStage.setResizable(false);
-			dialogStage.initOwner(parentStage);
-			dialogStage.initModality(Modality.WINDOW_MODAL);
-			dialogStage.showAndWait();
+			dialog.showAndWait(parentStage);
 
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -122,43 +157,6 @@ public class DepartmentListController implements Initializable, DataChangeListen
 		}
 	}
 
-	private void initEditButtons() {
-		tableColumnEDIT.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue()));
-		tableColumnEDIT.setCellFactory(param -> new TableCell<Department, Department>() {
-			private final Button button = new Button("Edit");
-
-			@Override
-			protected void updateItem(Department obj, boolean empty) {
-				super.updateItem(obj, empty);
-				if (obj == null) {
-					setGraphic(null);
-					return;
-				}
-				setGraphic(button);
-				button.setOnAction(
-						event -> createDialogForm(obj, "/gui/DepartmentForm.fxml", Utils.currentStage(event)));
-			}
-		});
-	}
-
-	private void initRemoveButtons() {
-		tableColumnREMOVE.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue()));
-		tableColumnREMOVE.setCellFactory(param -> new TableCell<Department, Department>() {
-			private final Button button = new Button("Remove");
-
-			@Override
-			protected void updateItem(Department obj, boolean empty) {
-				super.updateItem(obj, empty);
-				if (obj == null) {
-					setGraphic(null);
-					return;
-				}
-				setGraphic(button);
-				button.setOnAction(event -> removeEntity(obj));
-			}
-		});
-	}
-
 	private void removeEntity(Department department) {
 		Optional<ButtonType> result =  Alerts.showConfirmation("Confirmation", "Are you sure that you want to delete it?");
 		
@@ -166,18 +164,63 @@ public class DepartmentListController implements Initializable, DataChangeListen
 			if (service == null) {
 				throw new IllegalStateException("Service is null");
 			}
-			try {
-				service.remove(department);
-				updateTableView();
-			} catch (DbException e) {
-				Alerts.showAlert("Error removing department", null, e.getMessage(), AlertType.ERROR);
-			}
+			FxTasks.onFxThread(service.removeAsync(department),
+					done -> onDataChanged(new DataChangeEvent<>(DataChangeEvent.Type.REMOVED, department, department.getId())),
+					FxTasks.alertOnError("Error removing department"));
 		}
 	}
 
-	// This class implements DataChangeListener
+	// The poller dropped the department cache, one query reads the departments again and every
+	// changed row is patched as it is now, which also covers a row inserted and then removed
+	private void onRemoteChanges(List<ChangeLogEntry> changes) {
+		// The list is read when it is shown
+		if (obsDepartment == null) {
+			return;
+		}
+		FxTasks.onFxThread(service.findAllAsync(), departments -> {
+			Map<Integer, Department> byId = new HashMap<>();
+			for (Department department : departments) {
+				byId.put(department.getId(), department);
+			}
+			for (ChangeLogEntry change : changes) {
+				Department department = byId.get(change.getRowId());
+				if (department == null) {
+					Department removed = new Department(change.getRowId(), null);
+					onDataChanged(new DataChangeEvent<>(DataChangeEvent.Type.REMOVED, removed, removed.getId()));
+				} else {
+					DataChangeEvent.Type type = obsDepartment.contains(department)
+							? DataChangeEvent.Type.UPDATED
+							: DataChangeEvent.Type.INSERTED;
+					onDataChanged(new DataChangeEvent<>(type, department, department.getId()));
+				}
+			}
+		}, error -> {
+			// Not an action of this user, the next refresh shows the departments
+		});
+	}
+
+	// This class implements DataChangeListener, the row is patched without a new query
 	@Override
-	public void onDataChanged() {
-		updateTableView();
+	public void onDataChanged(DataChangeEvent<Department> event) {
+		if (obsDepartment == null) {
+			updateTableView();
+			return;
+		}
+		int index = obsDepartment.indexOf(event.getEntity());
+		switch (event.getType()) {
+		case INSERTED:
+			obsDepartment.add(event.getEntity());
+			break;
+		case UPDATED:
+			if (index >= 0) {
+				obsDepartment.set(index, event.getEntity());
+			}
+			break;
+		case REMOVED:
+			if (index >= 0) {
+				obsDepartment.remove(index);
+			}
+			break;
+		}
 	}
 }
\ No newline at end of file
@@ -2,13 +2,17 @@ package gui;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import application.Main;
 import gui.util.Alerts;
+import gui.util.ViewCache;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Node;
 import javafx.scene.Scene;
@@ -16,24 +20,32 @@ import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.layout.VBox;
-import model.services.DepartmentService;
-import model.services.SellerService;
+import model.services.FactoryService;
 
 public class MainViewController implements Initializable {
 
+	// Views kept loaded, and how many of the most opened ones are parsed at startup
+	private static final int VIEW_CACHE_SIZE = 4;
+	private static final int PRELOADED_VIEWS = 2;
+
+	private final ViewCache viewCache = new ViewCache(VIEW_CACHE_SIZE);
+
 	@FXML
 	private MenuItem menuItemSeller;
 	
 	@FXML
 	private MenuItem menuItemDepartment;
 	
+	@FXML
+	private MenuItem menuItemSalaryDashboard;
+	
 	@FXML
 	private MenuItem menuItemAbout;
 	
 	@FXML
 	public void onMenuItemSellerAction() {
 		loadView("/gui/SellerList.fxml", (SellerListController controller) -> {
-			controller.setSellerService(new SellerService());
+			controller.setSellerService(FactoryService.getSellerService());
 			controller.updateTableView();
 		});
 	}
@@ -41,11 +53,19 @@ public class MainViewController implements Initializable {
 	@FXML
 	public void onMenuItemDepartmentAction() {
 		loadView("/gui/DepartmentList.fxml", (DepartmentListController controller) -> {
-			controller.setDepartmentService(new DepartmentService());
+			controller.setDepartmentService(FactoryService.getDepartmentService());
 			controller.updateTableView();
 		});
 	}
 	
+	@FXML
+	public void onMenuItemSalaryDashboardAction() {
+		loadView("/gui/SalaryDashboard.fxml", (SalaryDashboardController controller) -> {
+			controller.setSellerService(FactoryService.getSellerService());
+			controller.updateDashboard();
+		});
+	}
+	
 	@FXML
 	public void onMenuItemAboutAction() {
 		loadView("/gui/About.fxml", x -> {});
@@ -55,12 +75,19 @@ public class MainViewController implements Initializable {
 	public void initialize(URL url, ResourceBundle rb) {
 	}
 	
+	// Parses the views in the background, along with the ones this user opens most.
+	// It is called by the startup once the main scene exists.
+	public void preloadViews(List<String> absoluteNames) {
+		Set<String> names = new LinkedHashSet<>(absoluteNames);
+		names.addAll(ViewCache.mostOpened(PRELOADED_VIEWS));
+		viewCache.preload(new ArrayList<>(names));
+	}
+	
 	public synchronized <T> void loadView(String absoluteName, Consumer<T> initializingAction) {
 		try {
 			
-			// Loading a new view
-			FXMLLoader loader = new FXMLLoader(getClass().getResource(absoluteName));
-			VBox newVBox = loader.load();
+			// Loading a new view, or taking the one loaded before with its controller
+			ViewCache.View view = viewCache.get(absoluteName);
 			
 			// Getting the main scene to use and keep some parts of it, like the menu
 			Scene mainScene = Main.getMainScene();
@@ -72,10 +99,11 @@ public class MainViewController implements Initializable {
 			
 			// Adding the elements on the new VBox
 			mainVBox.getChildren().add(mainMenu);
-			mainVBox.getChildren().addAll(newVBox.getChildren());
+			mainVBox.getChildren().addAll(view.getNodes());
 			
-			// To execute the function that is giving on the second parameter 
-			T controller = loader.getController();
+			// To execute the function that is giving on the second parameter,
+			// on a cached view it only refreshes the data
+			T controller = view.getController();
 			initializingAction.accept(controller);
 			
 		} catch (IOException e){
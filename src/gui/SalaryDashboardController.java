@@ -0,0 +1,102 @@
+package gui;
+
+import java.net.URL;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+
+import gui.util.FxTasks;
+import gui.util.Utils;
+import javafx.collections.FXCollections;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+import model.entities.SalaryStatistics;
+import model.services.SellerService;
+
+// Shows the salary aggregates computed by the database, the sellers themselves are never loaded
+public class SalaryDashboardController implements Initializable {
+
+	private static final int YEARS_PER_GROUP = 10;
+
+	private SellerService service;
+
+	private CompletableFuture<List<SalaryStatistics>> pendingDepartment;
+
+	private CompletableFuture<List<SalaryStatistics>> pendingBirthYear;
+
+	@FXML
+	private Button btRefresh;
+
+	@FXML
+	private TableView<SalaryStatistics> tableViewDepartment;
+
+	@FXML
+	private TableView<SalaryStatistics> tableViewBirthYear;
+
+	@FXML
+	public void onBtRefreshAction(ActionEvent actionEvent) {
+		updateDashboard();
+	}
+
+	@Override
+	public void initialize(URL url, ResourceBundle rb) {
+		initializeColumns(tableViewDepartment, "Department");
+		initializeColumns(tableViewBirthYear, "Birth years");
+	}
+
+	// Both tables show the same aggregates, only the kind of group changes
+	private void initializeColumns(TableView<SalaryStatistics> tableView, String groupTitle) {
+		TableColumn<SalaryStatistics, String> group = new TableColumn<>(groupTitle);
+		group.setCellValueFactory(new PropertyValueFactory<>("groupName"));
+		group.setPrefWidth(120.0);
+
+		TableColumn<SalaryStatistics, Integer> headcount = new TableColumn<>("Headcount");
+		headcount.setCellValueFactory(new PropertyValueFactory<>("headcount"));
+
+		tableView.getColumns().add(group);
+		tableView.getColumns().add(headcount);
+		tableView.getColumns().add(salaryColumn("Payroll", "payroll"));
+		tableView.getColumns().add(salaryColumn("Average", "average"));
+		tableView.getColumns().add(salaryColumn("Min", "minimum"));
+		tableView.getColumns().add(salaryColumn("Max", "maximum"));
+		tableView.getColumns().add(salaryColumn("Median", "median"));
+		tableView.getColumns().add(salaryColumn("P90", "percentile90"));
+	}
+
+	private TableColumn<SalaryStatistics, Double> salaryColumn(String title, String property) {
+		TableColumn<SalaryStatistics, Double> column = new TableColumn<>(title);
+		column.setCellValueFactory(new PropertyValueFactory<>(property));
+		Utils.formatTableColumnDouble(column, 2);
+		return column;
+	}
+
+	public void setSellerService(SellerService service) {
+		this.service = service;
+	}
+
+	public void updateDashboard() {
+		if (service == null) {
+			throw new IllegalStateException("Service is null");
+		}
+		FxTasks.cancel(pendingDepartment);
+		FxTasks.cancel(pendingBirthYear);
+		tableViewDepartment.setPlaceholder(new Label("Loading..."));
+		tableViewBirthYear.setPlaceholder(new Label("Loading..."));
+
+		pendingDepartment = FxTasks.onFxThread(service.salaryStatisticsByDepartmentAsync(), list -> {
+			tableViewDepartment.setItems(FXCollections.observableArrayList(list));
+			tableViewDepartment.setPlaceholder(new Label("No sellers"));
+		}, FxTasks.alertOnError("Error loading the salary statistics"));
+
+		pendingBirthYear = FxTasks.onFxThread(service.salaryStatisticsByBirthYearAsync(YEARS_PER_GROUP), list -> {
+			tableViewBirthYear.setItems(FXCollections.observableArrayList(list));
+			tableViewBirthYear.setPlaceholder(new Label("No sellers"));
+		}, FxTasks.alertOnError("Error loading the salary statistics"));
+	}
+}
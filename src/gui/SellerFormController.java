@@ -5,18 +5,25 @@ import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
-import db.DbException;
+import db.DbConflictException;
+import gui.listeners.DataChangeEvent;
 import gui.listeners.DataChangeListener;
 import gui.util.Alerts;
+import gui.util.CellFormatter;
 import gui.util.Constraints;
+import gui.util.FieldMerge;
+import gui.util.FxTasks;
 import gui.util.Utils;
+import javafx.animation.PauseTransition;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -30,11 +37,14 @@ import javafx.scene.control.Label;
 import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
+import javafx.stage.Stage;
 import javafx.util.Callback;
+import javafx.util.Duration;
 import model.entities.Department;
 import model.entities.Seller;
 import model.exceptions.ValidationException;
 import model.services.DepartmentService;
+import model.services.SellerRules;
 import model.services.SellerService;
 
 public class SellerFormController implements Initializable {
@@ -42,7 +52,7 @@ public class SellerFormController implements Initializable {
 	private SellerService sellerService;
 	private DepartmentService departmentService;
 	private Seller sellerEntity;
-	private List<DataChangeListener> dataChangeListeners = new ArrayList<>();
+	private List<DataChangeListener<Seller>> dataChangeListeners = new ArrayList<>();
 
 	@FXML
 	private TextField txtId;
@@ -82,12 +92,20 @@ public class SellerFormController implements Initializable {
 
 	private ObservableList<Department> obsList;
 
+	private final PauseTransition emailCheckDelay = new PauseTransition(Duration.millis(300));
+	private CompletableFuture<Boolean> pendingEmailCheck;
+
 	// Objects that implements DataChangeListener can subscribe to receive the event
 	// from this class
-	public void subscribeDataChangeListener(DataChangeListener listener) {
+	public void subscribeDataChangeListener(DataChangeListener<Seller> listener) {
 		dataChangeListeners.add(listener);
 	}
 
+	// The dialog is reused, the list that opens it subscribes again every time
+	public void clearDataChangeListeners() {
+		dataChangeListeners.clear();
+	}
+
 	@FXML
 	public void onBtSaveAction(ActionEvent actionEvent) {
 		if (sellerEntity == null) {
@@ -97,65 +115,120 @@ public class SellerFormController implements Initializable {
 			throw new IllegalStateException("Seller Service is null");
 		}
 
+		// The entity stays the row the form was opened with until the save succeeds,
+		// it is the base of the merge when another user saved it in the meantime
+		Seller saved;
 		try {
-			sellerEntity = getFormData();
-			sellerService.saveOrUpdate(sellerEntity);
+			saved = getFormData();
+		} catch (ValidationException e) {
+			setErrorMessages(e.getErros());
+			return;
+		}
+
+		// The listeners are told if the entity is new or an existing one
+		DataChangeEvent.Type changeType = saved.getId() == null
+				? DataChangeEvent.Type.INSERTED
+				: DataChangeEvent.Type.UPDATED;
+
+		// The save runs in the background, the buttons stay disabled until it finishes
+		Stage stage = Utils.currentStage(actionEvent);
+		setButtonsDisabled(true);
+		FxTasks.onFxThread(sellerService.saveOrUpdateAsync(saved), done -> {
+			setButtonsDisabled(false);
+			sellerEntity = saved;
 			// when we have the action of save or update
 			// we need to notify the listeners from the list
 			// about the change
-			notifyDataChangeListeners();
+			notifyDataChangeListeners(new DataChangeEvent<>(changeType, saved, saved.getId()));
 			// to close the window after the action
-			Utils.currentStage(actionEvent).close();
-		} catch (ValidationException e) {
-			setErrorMessages(e.getErros());
-		} catch (DbException e) {
-			Alerts.showAlert("Error saving objetc", null, e.getMessage(), AlertType.ERROR);
+			stage.close();
+		}, error -> {
+			setButtonsDisabled(false);
+			// The service checks the rules again, and the email may have been taken in the meantime
+			if (error instanceof ValidationException) {
+				setErrorMessages(((ValidationException) error).getErros());
+				return;
+			}
+			if (error instanceof DbConflictException) {
+				resolveConflict(saved, (Seller) ((DbConflictException) error).getCurrent(), stage);
+				return;
+			}
+			Alerts.showAlert("Error saving objetc", null, error.getMessage(), AlertType.ERROR);
+		});
+	}
+
+	// Another user saved the seller after the form was opened. Both changes are merged in the
+	// form and the current row becomes the base, so the next save goes over its version.
+	private void resolveConflict(Seller mine, Seller current, Stage stage) {
+		if (current == null) {
+			Alerts.showAlert("Seller removed", null, "The seller was removed by another user", AlertType.WARNING);
+			notifyDataChangeListeners(
+					new DataChangeEvent<>(DataChangeEvent.Type.REMOVED, sellerEntity, sellerEntity.getId()));
+			stage.close();
+			return;
+		}
+
+		Seller base = sellerEntity;
+		FieldMerge merge = new FieldMerge();
+		Seller merged = new Seller(current.getId(),
+				merge.merge("name", base.getName(), mine.getName(), current.getName()),
+				merge.merge("email", base.getEmail(), mine.getEmail(), current.getEmail()),
+				merge.merge("birthDate", base.getBirthDate(), mine.getBirthDate(), current.getBirthDate(),
+						CellFormatter.date("dd/MM/yyyy")::format),
+				merge.merge("baseSalary", base.getBaseSalary(), mine.getBaseSalary(), current.getBaseSalary(),
+						CellFormatter.decimal(2)::format),
+				merge.merge("department", base.getDepartment(), mine.getDepartment(), current.getDepartment(),
+						Department::getName));
+		sellerEntity = current;
+		fillForm(merged);
+
+		// The list shows the current row while the form is open
+		notifyDataChangeListeners(new DataChangeEvent<>(DataChangeEvent.Type.UPDATED, current, current.getId()));
+
+		Map<String, String> conflicts = merge.getConflicts();
+		String message = "Another user saved this seller while you were editing it. ";
+		if (conflicts.isEmpty()) {
+			message += "The changes were merged, check them and save again.";
+		} else {
+			message += "The fields with a message were changed by both, save again to keep your values.";
+			// The combo box has no error label
+			if (conflicts.containsKey("department")) {
+				message += "\nDepartment: " + conflicts.remove("department");
+			}
 		}
+		setErrorMessages(conflicts);
+		Alerts.showAlert("Seller changed", null, message, AlertType.INFORMATION);
 	}
 
-	private void notifyDataChangeListeners() {
-		for (DataChangeListener listener : dataChangeListeners) {
-			listener.onDataChanged();
+	private void setButtonsDisabled(boolean disabled) {
+		btSave.setDisable(disabled);
+		btCancel.setDisable(disabled);
+	}
+
+	private void notifyDataChangeListeners(DataChangeEvent<Seller> event) {
+		for (DataChangeListener<Seller> listener : dataChangeListeners) {
+			listener.onDataChanged(event);
 		}
 	}
 
+	// The form only converts the texts, the rules are the ones checked by SellerService
 	private Seller getFormData() {
 		Seller seller = new Seller();
 
-		ValidationException exceptionError = new ValidationException("Validation Error");
-
 		seller.setId(Utils.tryParseToInt(txtId.getText()));
-
-		if (txtName.getText() == null || txtName.getText().trim().equals("")) {
-			exceptionError.addErrors("name", "Field can not be empty");
-		}
+		seller.setVersion(sellerEntity.getVersion());
 		seller.setName(txtName.getText());
-		
-		if (txtEmail.getText() == null || txtEmail.getText().trim().equals("")) {
-			exceptionError.addErrors("email", "Field can not be empty");
-		}
 		seller.setEmail(txtEmail.getText());
-		
-		if (dpBirthDate.getValue() == null){
-			exceptionError.addErrors("birthDate", "Field can not be empty");
-		} else {
+		if (dpBirthDate.getValue() != null) {
 			// get the date that was choose by the user and convert to the type of instant, 
 			// this type is independent of location  
 			Instant instant = Instant.from(dpBirthDate.getValue().atStartOfDay(ZoneId.systemDefault()));
 			seller.setBirthDate(Date.from(instant));
 		}
-		
-		if (txtBaseSalary.getText() == null || txtBaseSalary.getText().trim().equals("")) {
-			exceptionError.addErrors("baseSalary", "Field can not be empty");
-		}
 		seller.setBaseSalary(Utils.tryParseToDouble(txtBaseSalary.getText()));
-
 		seller.setDepartment(comboBoxDepartment.getValue());
-		
-		if (exceptionError.getErros().size() > 0) {
-			throw exceptionError;
-		}
 
+		SellerRules.VALIDATOR.validate(seller);
 		return seller;
 	}
 
@@ -171,12 +244,33 @@ public class SellerFormController implements Initializable {
 
 	private void initializeFields() {
 		Constraints.setTextFieldInteger(txtId);
-		Constraints.setTextFieldMaxLength(txtName, 50);
-		Constraints.setTextFieldMaxLength(txtEmail, 70);
+		Constraints.setTextField(txtName, SellerRules.NAME);
+		Constraints.setTextField(txtEmail, SellerRules.EMAIL);
 		Utils.formatDatePicker(dpBirthDate, "dd/MM/yyyy");
-		Constraints.setTextFieldDouble(txtBaseSalary);
+		Constraints.setTextField(txtBaseSalary, SellerRules.BASE_SALARY);
 		
 		initializeComboBoxDepartment();
+
+		// The email is checked against the other sellers 300 ms after the last key
+		emailCheckDelay.setOnFinished(event -> checkEmail());
+		txtEmail.textProperty().addListener((obs, oldValue, newValue) -> {
+			FxTasks.cancel(pendingEmailCheck);
+			emailCheckDelay.playFromStart();
+		});
+	}
+
+	private void checkEmail() {
+		String email = txtEmail.getText();
+		String message = SellerRules.EMAIL.check(email);
+		if (message != null || sellerService == null) {
+			lbErrorEmail.setText(email == null || email.isEmpty() ? "" : message);
+			return;
+		}
+		Integer id = sellerEntity == null ? null : sellerEntity.getId();
+		pendingEmailCheck = FxTasks.onFxThread(sellerService.isEmailInUseAsync(email, id),
+				inUse -> lbErrorEmail.setText(inUse ? SellerService.EMAIL_IN_USE : ""),
+				// The save checks it again, a failed lookup is not reported while typing
+				error -> lbErrorEmail.setText(""));
 	}
 
 	public void setSeller(Seller sellerEntity) {
@@ -192,19 +286,30 @@ public class SellerFormController implements Initializable {
 		if (sellerEntity == null) {
 			throw new IllegalStateException("Seller entity is null");
 		}
-		txtId.setText(String.valueOf(sellerEntity.getId()));
-		txtName.setText(sellerEntity.getName());
-		txtEmail.setText(sellerEntity.getEmail());
-		Locale.setDefault(Locale.US);
-		txtBaseSalary.setText(String.format("%.2f", sellerEntity.getBaseSalary()));
-		if (sellerEntity.getBirthDate() != null) {
-			dpBirthDate.setValue(LocalDate.ofInstant(sellerEntity.getBirthDate().toInstant(), ZoneId.systemDefault()));
+		fillForm(sellerEntity);
+		// The messages of the last time the dialog was open
+		emailCheckDelay.stop();
+		FxTasks.cancel(pendingEmailCheck);
+		setErrorMessages(Collections.emptyMap());
+	}
+
+	private void fillForm(Seller seller) {
+		// The fields reject a text outside their input pattern, like "null"
+		txtId.setText(seller.getId() == null ? "" : String.valueOf(seller.getId()));
+		txtName.setText(seller.getName() == null ? "" : seller.getName());
+		txtEmail.setText(seller.getEmail() == null ? "" : seller.getEmail());
+		txtBaseSalary.setText(seller.getBaseSalary() == null ? ""
+				: String.format(Locale.US, "%.2f", seller.getBaseSalary()));
+		if (seller.getBirthDate() != null) {
+			dpBirthDate.setValue(LocalDate.ofInstant(Instant.ofEpochMilli(seller.getBirthDate().getTime()), ZoneId.systemDefault()));
+		} else {
+			dpBirthDate.setValue(null);
 		}
 		
-		if (sellerEntity.getDepartment() == null) {
+		if (seller.getDepartment() == null) {
 			comboBoxDepartment.getSelectionModel().selectFirst();
 		} else {
-			comboBoxDepartment.setValue(sellerEntity.getDepartment());
+			comboBoxDepartment.setValue(seller.getDepartment());
 		}
 	}
 
@@ -212,9 +317,16 @@ public class SellerFormController implements Initializable {
 		if (departmentService == null) {
 			throw new IllegalStateException("Department service is null");
 		}
-		List<Department> departmentList = departmentService.findAll();
-		obsList = FXCollections.observableArrayList(departmentList);
-		comboBoxDepartment.setItems(obsList);
+		comboBoxDepartment.setPromptText("Loading...");
+		FxTasks.onFxThread(departmentService.findAllAsync(), departmentList -> {
+			obsList = FXCollections.observableArrayList(departmentList);
+			comboBoxDepartment.setItems(obsList);
+			comboBoxDepartment.setPromptText(null);
+			// A new seller gets the first department once the list arrives
+			if (comboBoxDepartment.getValue() == null) {
+				comboBoxDepartment.getSelectionModel().selectFirst();
+			}
+		}, FxTasks.alertOnError("Error loading departments"));
 	}
 
 	private void initializeComboBoxDepartment() {
@@ -236,5 +348,9 @@ public class SellerFormController implements Initializable {
 		lbErrorEmail.setText((fields.contains("email") ? errors.get("email") : ""));
 		lbErrorBaseSalary.setText((fields.contains("baseSalary") ? errors.get("baseSalary") : ""));
 		lbErrorBithDate.setText((fields.contains("birthDate") ? errors.get("birthDate") : ""));
+		// The combo box has no error label
+		if (fields.contains("department")) {
+			Alerts.showAlert("Validation Error", null, "Department: " + errors.get("department"), AlertType.ERROR);
+		}
 	}
 }
\ No newline at end of file
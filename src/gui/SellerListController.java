@@ -2,47 +2,91 @@ package gui;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import application.Main;
-import db.DbException;
+import application.Startup;
+import gui.listeners.DataChangeEvent;
 import gui.listeners.DataChangeListener;
 import gui.util.Alerts;
+import gui.util.DisposableView;
+import gui.util.FormDialog;
+import gui.util.FxTasks;
+import gui.util.PagedList;
 import gui.util.Utils;
-import javafx.beans.property.ReadOnlyObjectWrapper;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.application.Platform;
+import javafx.animation.PauseTransition;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Scene;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
-import javafx.scene.control.TableCell;
+import javafx.scene.control.Label;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
 import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.scene.layout.Pane;
-import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import model.dao.ChangeLogEntry;
+import model.dao.FactoryDao;
+import model.dao.Page;
+import model.dao.SellerSearchCriteria;
+import model.dao.SellerSortKey;
+import model.dao.impl.ChangeLogPoller;
 import model.entities.Seller;
-import model.services.DepartmentService;
+import model.services.FactoryService;
 import model.services.SellerService;
 
-public class SellerListController implements Initializable, DataChangeListener {
+public class SellerListController implements Initializable, DataChangeListener<Seller>, DisposableView {
+
+	// Rows fetched by query and pages kept in memory by the table
+	private static final int PAGE_SIZE = 100;
+	private static final int MAX_PAGES_IN_MEMORY = 5;
+	// More changes of the other instances than this in one poll reload the list
+	private static final int MAX_PATCHED_CHANGES = 50;
 
 	private SellerService service;
 
-	private ObservableList<Seller> obsSeller;
+	private PagedList<Seller> obsSeller;
+
+	private CompletableFuture<Integer> pendingCount;
+
+	// True while the table gets a new list, the sort policy must not read the order then
+	private boolean replacingItems = false;
+
+	// Kept to be removed from the poller when the view is dropped
+	private final Consumer<List<ChangeLogEntry>> remoteSellerChanges =
+			changes -> Platform.runLater(() -> onRemoteChanges(changes));
+	private final Consumer<List<ChangeLogEntry>> remoteDepartmentChanges = changes -> Platform.runLater(() -> {
+		if (obsSeller != null) {
+			updateTableView();
+		}
+	});
+
+	private SellerSearchCriteria criteria = new SellerSearchCriteria();
+
+	private final Map<TableColumn<Seller, ?>, SellerSortKey> sortKeys = new HashMap<>();
+
+	// Waits for the user to stop typing before searching
+	private final PauseTransition searchDelay = new PauseTransition(Duration.millis(300));
 
 	@FXML
 	private Button btNew;
 
+	@FXML
+	private TextField txtSearch;
+
 	@FXML
 	private TableView<Seller> tableViewSeller;
 
@@ -61,6 +105,9 @@ public class SellerListController implements Initializable, DataChangeListener {
 	@FXML
 	private TableColumn<Seller, Double> tableColumnBaseSalary;
 
+	@FXML
+	private TableColumn<Seller, String> tableColumnDepartment;
+
 	@FXML
 	private TableColumn<Seller, Seller> tableColumnEDIT;
 
@@ -89,11 +136,55 @@ public class SellerListController implements Initializable, DataChangeListener {
 		Utils.formatTableColumnDate(tableColumnBirthDate, "dd/MM/yyyy");
 		tableColumnBaseSalary.setCellValueFactory(new PropertyValueFactory<>("baseSalary"));
 		Utils.formatTableColumnDouble(tableColumnBaseSalary, 2);
-		
 
-		// To resize the table view as the window
-		Stage stage = (Stage) Main.getMainScene().getWindow();
-		tableViewSeller.prefHeightProperty().bind(stage.heightProperty());
+		// A row of a page not loaded yet is null, like PropertyValueFactory it gives an empty cell
+		tableColumnDepartment.setCellValueFactory(param -> new ReadOnlyStringWrapper(
+				param.getValue() == null ? null : param.getValue().getDepartment().getName()));
+		Utils.formatTableColumnButton(tableColumnEDIT, "Edit",
+				(seller, event) -> createDialogForm(seller, "/gui/SellerForm.fxml", Utils.currentStage(event)));
+		Utils.formatTableColumnButton(tableColumnREMOVE, "Remove", (seller, event) -> removeEntity(seller));
+
+		// The rows are paged from the database, so a click on a column header becomes
+		// the ORDER BY of the query instead of sorting the list in memory
+		sortKeys.put(tableColumnId, SellerSortKey.ID);
+		sortKeys.put(tableColumnName, SellerSortKey.NAME);
+		sortKeys.put(tableColumnEmail, SellerSortKey.EMAIL);
+		sortKeys.put(tableColumnBirthDate, SellerSortKey.BIRTH_DATE);
+		sortKeys.put(tableColumnBaseSalary, SellerSortKey.BASE_SALARY);
+		sortKeys.put(tableColumnDepartment, SellerSortKey.DEPARTMENT);
+		tableViewSeller.setSortPolicy(table -> {
+			if (!replacingItems) {
+				sortInDatabase();
+			}
+			return true;
+		});
+
+		// Every key cancels the search still running, the new one starts 300 ms after the last key
+		searchDelay.setOnFinished(event -> {
+			SellerSearchCriteria search = criteriaFromText(txtSearch.getText());
+			search.setSort(criteria.getSortKey(), criteria.isAscending());
+			criteria = search;
+			updateTableView();
+		});
+		txtSearch.textProperty().addListener((obs, oldValue, newValue) -> {
+			FxTasks.cancel(pendingCount);
+			searchDelay.playFromStart();
+		});
+
+		// Saved by the other instances of the application, only the changed sellers are read again.
+		// The department name is in every row, so a changed department reloads the list.
+		ChangeLogPoller poller = FactoryDao.getChangeLogPoller();
+		if (poller != null) {
+			poller.addListener(ChangeLogEntry.SELLER, remoteSellerChanges);
+			poller.addListener(ChangeLogEntry.DEPARTMENT, remoteDepartmentChanges);
+		}
+
+		// To resize the table view as the window. The view can be loaded by the preload
+		// thread of the view cache, the window belongs to the JavaFX Application Thread.
+		Platform.runLater(() -> {
+			Stage stage = (Stage) Main.getMainScene().getWindow();
+			tableViewSeller.prefHeightProperty().bind(stage.heightProperty());
+		});
 	}
 
 	// With this method the developer can make dependency injection
@@ -105,34 +196,102 @@ public class SellerListController implements Initializable, DataChangeListener {
 		if (service == null) {
 			throw new IllegalStateException("Service is null");
 		}
-		List<Seller> listDept = service.findAll();
-		obsSeller = FXCollections.observableArrayList(listDept);
-		tableViewSeller.setItems(obsSeller);
+		// A new refresh cancels the one still running and the pages of the old list
+		FxTasks.cancel(pendingCount);
+		if (obsSeller != null) {
+			obsSeller.dispose();
+		}
+		tableViewSeller.setPlaceholder(new Label("Loading..."));
 
-		initEditButtons();
-		initRemoveButtons();
+		SellerSearchCriteria current = criteria;
+		pendingCount = FxTasks.onFxThread(service.countAsync(current), count -> {
+			// The list gets the future of the call itself, cancelling a dependent stage would leave
+			// the query running
+			obsSeller = new PagedList<>(request -> {
+				CompletableFuture<Page<Seller>> page = service.searchAsync(current, request);
+				page.thenRun(Startup::firstTableShown);
+				return page;
+			}, count, PAGE_SIZE, MAX_PAGES_IN_MEMORY);
+			showItems(obsSeller);
+			tableViewSeller.setPlaceholder(new Label("No sellers"));
+			if (count == 0) {
+				Startup.firstTableShown();
+			}
+		}, FxTasks.alertOnError("Error loading sellers"));
+	}
+
+	// setItems with a list that is not a SortedList clears the sort order of the table, which
+	// would run the policy with no order: back to the Id order and a second query. The order
+	// of the query is put back, with its arrow, without running the policy.
+	private void showItems(PagedList<Seller> items) {
+		List<TableColumn<Seller, ?>> sortOrder = new ArrayList<>(tableViewSeller.getSortOrder());
+		replacingItems = true;
+		try {
+			tableViewSeller.setItems(items);
+			tableViewSeller.getSortOrder().setAll(sortOrder);
+		} finally {
+			replacingItems = false;
+		}
+	}
+
+	// The view cache dropped the view, the poller would keep this controller and its pages alive
+	@Override
+	public void dispose() {
+		ChangeLogPoller poller = FactoryDao.getChangeLogPoller();
+		if (poller != null) {
+			poller.removeListener(ChangeLogEntry.SELLER, remoteSellerChanges);
+			poller.removeListener(ChangeLogEntry.DEPARTMENT, remoteDepartmentChanges);
+		}
+		searchDelay.stop();
+		FxTasks.cancel(pendingCount);
+		if (obsSeller != null) {
+			obsSeller.dispose();
+		}
+	}
+
+	private void sortInDatabase() {
+		SellerSortKey key = SellerSortKey.ID;
+		boolean ascending = true;
+		if (!tableViewSeller.getSortOrder().isEmpty()) {
+			TableColumn<Seller, ?> column = tableViewSeller.getSortOrder().get(0);
+			key = sortKeys.getOrDefault(column, SellerSortKey.ID);
+			ascending = column.getSortType() == TableColumn.SortType.ASCENDING;
+		}
+		// The policy also runs when the order did not change, only a new order needs a query
+		if (key != criteria.getSortKey() || ascending != criteria.isAscending()) {
+			criteria.setSort(key, ascending);
+			updateTableView();
+		}
+	}
+
+	// A text with @ is searched as an email prefix, any other text as a name prefix,
+	// that way each search uses one index
+	private static SellerSearchCriteria criteriaFromText(String text) {
+		SellerSearchCriteria criteria = new SellerSearchCriteria();
+		String prefix = text == null ? "" : text.trim();
+		if (prefix.contains("@")) {
+			criteria.setEmailPrefix(prefix);
+		} else if (!prefix.isEmpty()) {
+			criteria.setNamePrefix(prefix);
+		}
+		return criteria;
 	}
 
 	private void createDialogForm(Seller seller, String absoluteName, Stage parentStage) {
 		try {
 
-			FXMLLoader loader = new FXMLLoader(getClass().getResource(absoluteName));
-			Pane pane = loader.load();
+			// The form is parsed once, every open binds it to the seller
+			FormDialog<SellerFormController> dialog = FormDialog.get(absoluteName, "Enter with seller data");
 
-			SellerFormController controller = loader.getController();
+			SellerFormController controller = dialog.getController();
 			controller.setSeller(seller);
-			controller.setServices(new SellerService(), new DepartmentService());
+			controller.setServices(FactoryService.getSellerService(), FactoryService.getDepartmentService());
 			controller.loadAssociatedObjects();
+			controller.clearDataChangeListeners();
 			controller.subscribeDataChangeListener(this);
 			controller.updateFormData();
 
-			Stage dialogStage = new Stage();
-			dialogStage.setTitle("Enter with seller data");
-			dialogStage.setScene(new Scene(pane));
-			dialogStage.setResizable(false);
-			dialogStage.initOwner(parentStage);
-			dialogStage.initModality(Modality.WINDOW_MODAL);
-			dialogStage.showAndWait();
+			dialog.showAndWait(parentStage);
 
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -140,43 +299,6 @@ public class SellerListController implements Initializable, DataChangeListener {
 		}
 	}
 
-	private void initEditButtons() {
-		tableColumnEDIT.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue()));
-		tableColumnEDIT.setCellFactory(param -> new TableCell<Seller, Seller>() {
-			private final Button button = new Button("Edit");
-
-			@Override
-			protected void updateItem(Seller obj, boolean empty) {
-				super.updateItem(obj, empty);
-				if (obj == null) {
-					setGraphic(null);
-					return;
-				}
-				setGraphic(button);
-				button.setOnAction(
-						event -> createDialogForm(obj, "/gui/SellerForm.fxml", Utils.currentStage(event)));
-			}
-		});
-	}
-
-	private void initRemoveButtons() {
-		tableColumnREMOVE.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue()));
-		tableColumnREMOVE.setCellFactory(param -> new TableCell<Seller, Seller>() {
-			private final Button button = new Button("Remove");
-
-			@Override
-			protected void updateItem(Seller obj, boolean empty) {
-				super.updateItem(obj, empty);
-				if (obj == null) {
-					setGraphic(null);
-					return;
-				}
-				setGraphic(button);
-				button.setOnAction(event -> removeEntity(obj));
-			}
-		});
-	}
-
 	private void removeEntity(Seller seller) {
 		Optional<ButtonType> result =  Alerts.showConfirmation("Confirmation", "Are you sure that you want to delete it?");
 		
@@ -184,18 +306,70 @@ public class SellerListController implements Initializable, DataChangeListener {
 			if (service == null) {
 				throw new IllegalStateException("Service is null");
 			}
-			try {
-				service.remove(seller);
-				updateTableView();
-			} catch (DbException e) {
-				Alerts.showAlert("Error removing seller", null, e.getMessage(), AlertType.ERROR);
+			FxTasks.onFxThread(service.removeAsync(seller),
+					done -> onDataChanged(new DataChangeEvent<>(DataChangeEvent.Type.REMOVED, seller, seller.getId())),
+					FxTasks.alertOnError("Error removing seller"));
+		}
+	}
+
+	// With a search the new or edited seller may not match it anymore, and with another order
+	// than the ascending id its position is only known by the database
+	private boolean isPositionKnown() {
+		return criteria.isEmpty() && criteria.getSortKey() == SellerSortKey.ID && criteria.isAscending();
+	}
+
+	// Each change becomes the event of a local save, with the seller as it is now in the database
+	private void onRemoteChanges(List<ChangeLogEntry> changes) {
+		// The list is read when it is shown
+		if (obsSeller == null) {
+			return;
+		}
+		if (!isPositionKnown() || changes.size() > MAX_PATCHED_CHANGES) {
+			updateTableView();
+			return;
+		}
+		for (ChangeLogEntry change : changes) {
+			if (change.getOperation() == ChangeLogEntry.Operation.DELETE) {
+				Seller removed = new Seller();
+				removed.setId(change.getRowId());
+				onDataChanged(new DataChangeEvent<>(DataChangeEvent.Type.REMOVED, removed, removed.getId()));
+			} else {
+				DataChangeEvent.Type type = change.getOperation() == ChangeLogEntry.Operation.INSERT
+						? DataChangeEvent.Type.INSERTED
+						: DataChangeEvent.Type.UPDATED;
+				FxTasks.onFxThread(service.findByIdAsync(change.getRowId()), seller -> {
+					// Null when it was removed since, the delete comes with the next poll
+					if (seller != null) {
+						onDataChanged(new DataChangeEvent<>(type, seller, seller.getId()));
+					}
+				}, error -> {
+					// Not an action of this user, the next refresh shows the seller
+				});
 			}
 		}
 	}
 
-	// This class implements DataChangeListener
+	// This class implements DataChangeListener, the change is patched in the loaded pages
+	// and the table only reloads when the row is not in memory
 	@Override
-	public void onDataChanged() {
-		updateTableView();
+	public void onDataChanged(DataChangeEvent<Seller> event) {
+		if (obsSeller == null || (!isPositionKnown() && event.getType() != DataChangeEvent.Type.REMOVED)) {
+			updateTableView();
+			return;
+		}
+		switch (event.getType()) {
+		case INSERTED:
+			// The list is ordered by id, so a new seller is the last row
+			obsSeller.appendRow(event.getEntity());
+			break;
+		case UPDATED:
+			obsSeller.updateRow(event.getEntity());
+			break;
+		case REMOVED:
+			if (!obsSeller.removeRow(event.getEntity())) {
+				updateTableView();
+			}
+			break;
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package gui.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+// The text of the table cells. A scroll moves every visible cell to a neighbour row, so
+// most values were already formatted one frame before: the last texts are kept in a
+// direct-mapped cache and a hit allocates nothing. The instances are shared by pattern
+// and they do not depend on JavaFX, the benchmarks use them without a toolkit.
+public final class CellFormatter<T> {
+
+	private static final int CACHE_BITS = 10;
+
+	private static final Map<String, DateTimeFormatter> patterns = new ConcurrentHashMap<>();
+	private static final Map<String, CellFormatter<Date>> dates = new ConcurrentHashMap<>();
+	private static final Map<Integer, CellFormatter<Double>> decimals = new ConcurrentHashMap<>();
+
+	private final ToLongFunction<T> key;
+	private final Function<T, String> format;
+	// A slot is replaced by a new entry, never changed, so a racy read sees a whole entry
+	private final Entry[] cache = new Entry[1 << CACHE_BITS];
+
+	private CellFormatter(ToLongFunction<T> key, Function<T, String> format) {
+		this.key = key;
+		this.format = format;
+	}
+
+	// DateTimeFormatter is immutable, one instance per pattern is enough for the whole application
+	public static DateTimeFormatter pattern(String pattern) {
+		return patterns.computeIfAbsent(pattern, DateTimeFormatter::ofPattern);
+	}
+
+	public static CellFormatter<Date> date(String pattern) {
+		return dates.computeIfAbsent(pattern, p -> {
+			DateTimeFormatter formatter = pattern(p);
+			// java.sql.Date does not support toInstant
+			return new CellFormatter<>(Date::getTime, date -> formatter
+					.format(Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate()));
+		});
+	}
+
+	// Half up and always a dot as decimal separator, like String.format with Locale.US
+	public static CellFormatter<Double> decimal(int places) {
+		return decimals.computeIfAbsent(places,
+				p -> new CellFormatter<>(Double::doubleToLongBits, value -> formatDecimal(value, p)));
+	}
+
+	private static String formatDecimal(double value, int places) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return Double.toString(value);
+		}
+		return BigDecimal.valueOf(value).setScale(places, RoundingMode.HALF_UP).toPlainString();
+	}
+
+	public String format(T value) {
+		if (value == null) {
+			return null;
+		}
+		long k = key.applyAsLong(value);
+		int slot = (Long.hashCode(k) * 0x9E3779B9) >>> (32 - CACHE_BITS);
+		Entry entry = cache[slot];
+		if (entry == null || entry.key != k) {
+			entry = new Entry(k, format.apply(value));
+			cache[slot] = entry;
+		}
+		return entry.text;
+	}
+
+	private static final class Entry {
+
+		private final long key;
+		private final String text;
+
+		private Entry(long key, String text) {
+			this.key = key;
+			this.text = text;
+		}
+	}
+}
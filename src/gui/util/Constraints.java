@@ -1,30 +1,43 @@
 package gui.util;
 
+import java.util.regex.Pattern;
+
 import javafx.scene.control.TextField;
+import javafx.scene.control.TextFormatter;
+import model.validation.Field;
+import model.validation.Rules;
 
 public class Constraints {
 	
 	public static void setTextFieldInteger(TextField txt) {
-		txt.textProperty().addListener((obs, oldValue, newValue) -> {
-			if (newValue != null && !newValue.matches("\\d*")) {
-				txt.setText(oldValue);
-			}
-		});
+		setTextFieldInput(txt, Rules.INTEGER_INPUT, 0);
 	}
 
 	public static void setTextFieldMaxLength(TextField txt, int max) {
-		txt.textProperty().addListener((obs, oldValue, newValue) -> {
-			if (newValue != null && newValue.length() > max) {
-				txt.setText(oldValue);
-			}
-		});
+		setTextFieldInput(txt, null, max);
 	}
 
 	public static void setTextFieldDouble(TextField txt) {
-		txt.textProperty().addListener((obs, oldValue, newValue) -> {
-			if (newValue != null && !newValue.matches("\\d*([\\.]\\d*)?")) {
-				txt.setText(oldValue);
+		setTextFieldInput(txt, Rules.DECIMAL_INPUT, 0);
+	}
+
+	// The input limits of a field of the entity rules
+	public static void setTextField(TextField txt, Field<?, ?> field) {
+		setTextFieldInput(txt, field.getInputPattern(), field.getMaxLength());
+	}
+
+	// The filter runs before the edit is applied, so a rejected keystroke never changes the text
+	// and the listeners of the field only see valid texts. The pattern must be precompiled.
+	public static void setTextFieldInput(TextField txt, Pattern inputPattern, int maxLength) {
+		txt.setTextFormatter(new TextFormatter<String>(change -> {
+			String text = change.getControlNewText();
+			if (maxLength > 0 && text.length() > maxLength) {
+				return null;
+			}
+			if (inputPattern != null && !inputPattern.matcher(text).matches()) {
+				return null;
 			}
-		});
+			return change;
+		}));
 	}
 }
@@ -0,0 +1,8 @@
+package gui.util;
+
+// The controller of a view that holds something outside of it, like a listener of the change
+// log poller. The view cache calls dispose when it drops the view, the view is not shown again.
+public interface DisposableView {
+
+	void dispose();
+}
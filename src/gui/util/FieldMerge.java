@@ -0,0 +1,35 @@
+package gui.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+// Three-way merge of a form saved over a row that another user changed in the meantime:
+// base is the row the form was opened with, mine the form data and theirs the current row.
+// The side that changed a field wins. A field changed by both to different values keeps
+// the value of the form and is reported as a conflict, with the value of the other user.
+public class FieldMerge {
+
+	private final Map<String, String> conflicts = new LinkedHashMap<>();
+
+	public <V> V merge(String field, V base, V mine, V theirs) {
+		return merge(field, base, mine, theirs, String::valueOf);
+	}
+
+	public <V> V merge(String field, V base, V mine, V theirs, Function<V, String> text) {
+		if (Objects.equals(mine, base)) {
+			return theirs;
+		}
+		if (Objects.equals(theirs, base) || Objects.equals(theirs, mine)) {
+			return mine;
+		}
+		conflicts.put(field, "Saved by another user as " + (theirs == null ? "empty" : text.apply(theirs)));
+		return mine;
+	}
+
+	// Field name and message of the fields changed by both
+	public Map<String, String> getConflicts() {
+		return conflicts;
+	}
+}
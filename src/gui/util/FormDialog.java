@@ -0,0 +1,87 @@
+package gui.util;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Scene;
+import javafx.scene.layout.Pane;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+// A modal form built once and shown again for every entity: the FXML is parsed the first
+// time (or in the background by preload) and the Stage is created on the first show.
+// The caller binds the controller to the new entity before each showAndWait.
+public class FormDialog<C> {
+
+	// Only used on the JavaFX Application Thread
+	private static final Map<String, FormDialog<?>> dialogs = new HashMap<>();
+
+	private String title;
+	private final Pane pane;
+	private final C controller;
+	private Stage stage;
+
+	private FormDialog(String title, Pane pane, C controller) {
+		this.title = title;
+		this.pane = pane;
+		this.controller = controller;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <C> FormDialog<C> get(String absoluteName, String title) throws IOException {
+		FormDialog<?> dialog = dialogs.get(absoluteName);
+		if (dialog == null) {
+			dialog = load(absoluteName, title);
+			dialogs.put(absoluteName, dialog);
+		}
+		dialog.title = title;
+		return (FormDialog<C>) dialog;
+	}
+
+	// Parses the forms in the calling thread, the dialogs are registered on the JavaFX
+	// Application Thread
+	public static void preload(List<String> absoluteNames) throws IOException {
+		List<FormDialog<?>> loaded = new ArrayList<>();
+		for (String name : absoluteNames) {
+			loaded.add(load(name, null));
+		}
+		Platform.runLater(() -> {
+			for (int i = 0; i < loaded.size(); i++) {
+				dialogs.putIfAbsent(absoluteNames.get(i), loaded.get(i));
+			}
+		});
+	}
+
+	private static FormDialog<?> load(String absoluteName, String title) throws IOException {
+		URL resource = FormDialog.class.getResource(absoluteName);
+		if (resource == null) {
+			throw new IOException("View not found: " + absoluteName);
+		}
+		FXMLLoader loader = new FXMLLoader(resource);
+		Pane pane = loader.load();
+		return new FormDialog<>(title, pane, loader.getController());
+	}
+
+	public C getController() {
+		return controller;
+	}
+
+	public void showAndWait(Window owner) {
+		if (stage == null) {
+			stage = new Stage();
+			stage.setScene(new Scene(pane));
+			stage.setResizable(false);
+			stage.initOwner(owner);
+			stage.initModality(Modality.WINDOW_MODAL);
+		}
+		stage.setTitle(title);
+		stage.showAndWait();
+	}
+}
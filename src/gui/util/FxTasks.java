@@ -0,0 +1,54 @@
+package gui.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import javafx.scene.control.Alert.AlertType;
+
+public class FxTasks {
+
+	// Hands the result of a background call to the JavaFX Application Thread.
+	// Nothing is called back when the future was cancelled in the meantime.
+	public static <T> CompletableFuture<T> onFxThread(CompletableFuture<T> future, Consumer<T> onSuccess,
+			Consumer<Throwable> onError) {
+		future.whenComplete((result, error) -> {
+			if (future.isCancelled()) {
+				return;
+			}
+			Platform.runLater(() -> {
+				if (future.isCancelled()) {
+					return;
+				}
+				if (error == null) {
+					onSuccess.accept(result);
+				} else {
+					onError.accept(unwrap(error));
+				}
+			});
+		});
+		return future;
+	}
+
+	// Error handler that shows the message of the failed call in an alert
+	public static Consumer<Throwable> alertOnError(String title) {
+		return error -> Alerts.showAlert(title, null, error.getMessage(), AlertType.ERROR);
+	}
+
+	public static Throwable unwrap(Throwable error) {
+		while ((error instanceof CompletionException || error instanceof ExecutionException)
+				&& error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
+	}
+
+	// A future of the ServiceExecutor also cancels the statement it is running
+	public static void cancel(CompletableFuture<?> future) {
+		if (future != null) {
+			future.cancel(false);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package gui.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import javafx.collections.ObservableListBase;
+import model.dao.Page;
+import model.dao.PageRequest;
+
+// A read-only list for TableView that only keeps in memory the pages around the rows
+// being displayed. The TableView only asks for the visible rows, so the pages are
+// loaded on demand with keyset pagination and the ones far from the viewport are evicted.
+// A page far from every known anchor, like the bottom of the scrollbar, is read with OFFSET.
+// The pages are fetched in the background: a row that is not loaded yet is null (an empty
+// row in the table) and the list fires a replace change when its page arrives.
+public class PagedList<T> extends ObservableListBase<T> {
+
+	// A jump over more pages than this is one OFFSET query instead of one query per page
+	private static final int MAX_PAGES_TO_WALK = 2;
+
+	// Cancelled when the page is not needed anymore, it should be the future of the call that
+	// runs the query so the cancel reaches the statement
+	private final Function<PageRequest<T>, CompletableFuture<Page<T>>> loader;
+	private final int pageSize;
+	private final int maxPagesInMemory;
+	private int size;
+
+	private final Map<Integer, List<T>> pages = new HashMap<>();
+	// Last row of every page already visited, it is the anchor to seek the following page.
+	// It is kept after the page is evicted so going back there is one query.
+	private final Map<Integer, T> pageEnds = new HashMap<>();
+	private final Map<Integer, CompletableFuture<Page<T>>> loading = new HashMap<>();
+
+	private int visiblePage = 0;
+	private boolean disposed = false;
+
+	public PagedList(Function<PageRequest<T>, CompletableFuture<Page<T>>> loader, int size, int pageSize,
+			int maxPagesInMemory) {
+		this.loader = loader;
+		this.size = size;
+		this.pageSize = pageSize;
+		this.maxPagesInMemory = Math.max(3, maxPagesInMemory);
+	}
+
+	@Override
+	public T get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		int pageIndex = index / pageSize;
+		visiblePage = pageIndex;
+		int offset = index % pageSize;
+
+		// Prefetch the neighbour page the user is scrolling to
+		if (offset >= pageSize / 2 && (pageIndex + 1) * pageSize < size) {
+			requestPage(pageIndex + 1);
+		} else if (offset < pageSize / 2 && pageIndex > 0) {
+			requestPage(pageIndex - 1);
+		}
+
+		List<T> rows = pages.get(pageIndex);
+		if (rows == null) {
+			requestPage(pageIndex);
+			return null;
+		}
+		return offset < rows.size() ? rows.get(offset) : null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public int getLoadedPages() {
+		return pages.size();
+	}
+
+	// Replaces a loaded row with the new version of the entity (found by equals), returns
+	// false when its page is not in memory, it will be read from the database when needed
+	public boolean updateRow(T item) {
+		for (Map.Entry<Integer, List<T>> entry : pages.entrySet()) {
+			List<T> rows = entry.getValue();
+			int offset = rows.indexOf(item);
+			if (offset >= 0) {
+				T old = rows.set(offset, item);
+				if (pageEnds.get(entry.getKey()) == old) {
+					pageEnds.put(entry.getKey(), item);
+				}
+				beginChange();
+				nextSet(entry.getKey() * pageSize + offset, old);
+				endChange();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// A new row at the end of the list, like a new id with the list ordered by id
+	public void appendRow(T item) {
+		int lastPage = size / pageSize;
+		List<T> rows = pages.get(lastPage);
+		if (rows != null && rows.size() == size % pageSize) {
+			rows.add(item);
+			pageEnds.put(lastPage, item);
+		}
+		size++;
+		beginChange();
+		nextAdd(size - 1, size);
+		endChange();
+	}
+
+	// Removes a loaded row, returns false when its page is not in memory because then its
+	// position is unknown and the list must be reloaded. The rows after it shift one position,
+	// so its page is read again, seeking from the previous page, and the following pages are dropped.
+	public boolean removeRow(T item) {
+		for (Map.Entry<Integer, List<T>> entry : pages.entrySet()) {
+			int pageIndex = entry.getKey();
+			int offset = entry.getValue().indexOf(item);
+			if (offset >= 0) {
+				T removed = entry.getValue().get(offset);
+				pages.keySet().removeIf(p -> p >= pageIndex);
+				pageEnds.keySet().removeIf(p -> p >= pageIndex);
+				for (CompletableFuture<Page<T>> future : loading.values()) {
+					future.cancel(false);
+				}
+				loading.clear();
+				size--;
+				beginChange();
+				nextRemove(pageIndex * pageSize + offset, removed);
+				endChange();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Cancels the pending loads, it is called when the table gets another list
+	public void dispose() {
+		disposed = true;
+		for (CompletableFuture<Page<T>> future : loading.values()) {
+			future.cancel(false);
+		}
+		loading.clear();
+	}
+
+	private void requestPage(int pageIndex) {
+		if (disposed || pages.containsKey(pageIndex) || loading.containsKey(pageIndex)) {
+			return;
+		}
+
+		if (pageIndex == 0) {
+			load(0, 0, PageRequest.first(pageSize));
+			return;
+		}
+		if (pageEnds.containsKey(pageIndex - 1)) {
+			load(pageIndex, pageIndex, PageRequest.after(pageEnds.get(pageIndex - 1), pageSize));
+			return;
+		}
+		// Scrolling up from a page reached with OFFSET, the page ends right before its first row
+		List<T> following = pages.get(pageIndex + 1);
+		if (following != null && !following.isEmpty() && following.size() == pageSize) {
+			load(pageIndex, pageIndex, PageRequest.before(following.get(0), pageSize));
+			return;
+		}
+
+		// Without the last row of the previous page the list walks from the nearest known page,
+		// or skips the rows with OFFSET when that page is far
+		int known = pageIndex - 1;
+		while (known >= 0 && !pageEnds.containsKey(known)) {
+			known--;
+		}
+		int next = known + 1;
+		if (pageIndex - next > MAX_PAGES_TO_WALK) {
+			load(pageIndex, pageIndex, PageRequest.at(pageIndex * pageSize, pageSize));
+		} else if (!loading.containsKey(next)) {
+			load(next, pageIndex, next == 0
+					? PageRequest.first(pageSize)
+					: PageRequest.after(pageEnds.get(next - 1), pageSize));
+		}
+	}
+
+	private void load(int pageIndex, int wantedPage, PageRequest<T> request) {
+		CompletableFuture<Page<T>> future = loader.apply(request);
+		loading.put(pageIndex, future);
+		FxTasks.onFxThread(future, page -> {
+			loading.remove(pageIndex);
+			if (disposed) {
+				return;
+			}
+			store(pageIndex, page.getContent());
+			if (pageIndex < wantedPage && !page.getContent().isEmpty()) {
+				requestPage(wantedPage);
+			}
+		}, error -> {
+			loading.remove(pageIndex);
+			FxTasks.alertOnError("Error loading data").accept(error);
+		});
+	}
+
+	private void store(int pageIndex, List<T> content) {
+		// A copy, the rows are patched in place by updateRow and appendRow
+		List<T> rows = new ArrayList<>(content);
+		pages.put(pageIndex, rows);
+		if (!rows.isEmpty()) {
+			pageEnds.put(pageIndex, rows.get(rows.size() - 1));
+		}
+		evictFarPages();
+
+		int from = pageIndex * pageSize;
+		int to = Math.min(size, from + pageSize);
+		if (from < to) {
+			beginChange();
+			nextReplace(from, to, new ArrayList<>(Collections.nCopies(to - from, null)));
+			endChange();
+		}
+	}
+
+	private void evictFarPages() {
+		while (pages.size() > maxPagesInMemory) {
+			int farthest = visiblePage;
+			for (int p : pages.keySet()) {
+				if (Math.abs(p - visiblePage) > Math.abs(farthest - visiblePage)) {
+					farthest = p;
+				}
+			}
+			if (farthest == visiblePage) {
+				return;
+			}
+			pages.remove(farthest);
+		}
+	}
+}
@@ -1,13 +1,14 @@
 package gui.util;
 
-import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
-import java.util.Locale;
+import java.util.function.BiConsumer;
 
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.event.ActionEvent;
 import javafx.scene.Node;
+import javafx.scene.control.Button;
 import javafx.scene.control.DatePicker;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
@@ -36,18 +37,18 @@ public class Utils {
 		}
 	}
 
+	// The cells of every column with the same pattern share one formatter and its cache
 	public static <T> void formatTableColumnDate(TableColumn<T, Date> tableColumn, String format) {
+		CellFormatter<Date> formatter = CellFormatter.date(format);
 		tableColumn.setCellFactory(column -> {
 			TableCell<T, Date> cell = new TableCell<T, Date>() {
-				private SimpleDateFormat sdf = new SimpleDateFormat(format);
-
 				@Override
 				protected void updateItem(Date item, boolean empty) {
 					super.updateItem(item, empty);
 					if (empty) {
 						setText(null);
 					} else {
-						setText(sdf.format(item));
+						setText(formatter.format(item));
 					}
 				}
 			};
@@ -56,6 +57,7 @@ public class Utils {
 	}
 
 	public static <T> void formatTableColumnDouble(TableColumn<T, Double> tableColumn, int decimalPlaces) {
+		CellFormatter<Double> formatter = CellFormatter.decimal(decimalPlaces);
 		tableColumn.setCellFactory(column -> {
 			TableCell<T, Double> cell = new TableCell<T, Double>() {
 				@Override
@@ -64,8 +66,7 @@ public class Utils {
 					if (empty) {
 						setText(null);
 					} else {
-						Locale.setDefault(Locale.US);
-						setText(String.format("%." + decimalPlaces + "f", item));
+						setText(formatter.format(item));
 					}
 				}
 			};
@@ -73,9 +74,32 @@ public class Utils {
 		});
 	}
 
+	// A column with one button per row, like Edit and Remove. It is installed once: the button
+	// and its handler are created with the cell and the handler reads the row when clicked,
+	// so showing another row only changes the item of the cell.
+	public static <T> void formatTableColumnButton(TableColumn<T, T> tableColumn, String text,
+			BiConsumer<T, ActionEvent> action) {
+		tableColumn.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue()));
+		tableColumn.setCellFactory(column -> {
+			TableCell<T, T> cell = new TableCell<T, T>() {
+				private final Button button = new Button(text);
+				{
+					button.setOnAction(event -> action.accept(getItem(), event));
+				}
+
+				@Override
+				protected void updateItem(T item, boolean empty) {
+					super.updateItem(item, empty);
+					setGraphic(empty || item == null ? null : button);
+				}
+			};
+			return cell;
+		});
+	}
+
 	public static void formatDatePicker(DatePicker datePicker, String format) {
 		datePicker.setConverter(new StringConverter<LocalDate>() {
-			DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern(format);
+			DateTimeFormatter dateFormatter = CellFormatter.pattern(format);
 			{
 				datePicker.setPromptText(format.toLowerCase());
 			}
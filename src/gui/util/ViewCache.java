@@ -0,0 +1,153 @@
+package gui.util;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+
+// Keeps the views loaded from FXML, with their controllers, so opening a screen again is
+// only a swap of the children of the main window. The least recently opened view is dropped
+// when there are more than maxSize, and its controller disposed. How many times each view is opened is saved in the user
+// preferences, and the most opened ones can be parsed in the background at startup.
+public class ViewCache {
+
+	private static final Preferences usage = Preferences.userNodeForPackage(ViewCache.class).node("views");
+
+	private final int maxSize;
+	private final LinkedHashMap<String, View> views;
+
+	public ViewCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.views = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, View> eldest) {
+				if (size() > ViewCache.this.maxSize) {
+					dispose(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	// Must be called on the JavaFX Application Thread, the view is loaded when it is not cached
+	public View get(String absoluteName) throws IOException {
+		View view = views.get(absoluteName);
+		if (view == null) {
+			view = load(absoluteName);
+			views.put(absoluteName, view);
+		}
+		recordOpen(absoluteName);
+		return view;
+	}
+
+	public boolean contains(String absoluteName) {
+		return views.containsKey(absoluteName);
+	}
+
+	public void invalidate(String absoluteName) {
+		View view = views.remove(absoluteName);
+		if (view != null) {
+			dispose(view);
+		}
+	}
+
+	// Parses the views in a background thread, the nodes are not attached to the scene yet so
+	// that is allowed, and hands them to the cache on the JavaFX Application Thread
+	public void preload(List<String> absoluteNames) {
+		List<String> names = new ArrayList<>(absoluteNames);
+		names.removeIf(this::contains);
+		if (names.isEmpty()) {
+			return;
+		}
+		Thread thread = new Thread(() -> {
+			for (String name : names) {
+				try {
+					View view = load(name);
+					Platform.runLater(() -> {
+						if (!views.containsKey(name)) {
+							views.put(name, view);
+						} else {
+							// Opened while it was parsed, this copy is never shown
+							dispose(view);
+						}
+					});
+				} catch (IOException | RuntimeException e) {
+					// The view is loaded again when it is opened and then the error is shown
+				}
+			}
+		}, "view-preload");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// The views opened more often by this user, most opened first
+	public static List<String> mostOpened(int count) {
+		List<String> names = new ArrayList<>();
+		try {
+			for (String key : usage.keys()) {
+				names.add(key);
+			}
+		} catch (BackingStoreException | IllegalStateException e) {
+			return names;
+		}
+		names.sort((a, b) -> Integer.compare(usage.getInt(b, 0), usage.getInt(a, 0)));
+		return names.size() > count ? new ArrayList<>(names.subList(0, count)) : names;
+	}
+
+	private static void recordOpen(String absoluteName) {
+		try {
+			usage.putInt(absoluteName, usage.getInt(absoluteName, 0) + 1);
+		} catch (IllegalStateException e) {
+			// Without preferences there is just no preload
+		}
+	}
+
+	private static void dispose(View view) {
+		if (view.controller instanceof DisposableView) {
+			((DisposableView) view.controller).dispose();
+		}
+	}
+
+	private static View load(String absoluteName) throws IOException {
+		URL resource = ViewCache.class.getResource(absoluteName);
+		if (resource == null) {
+			throw new IOException("View not found: " + absoluteName);
+		}
+		FXMLLoader loader = new FXMLLoader(resource);
+		Pane root = loader.load();
+		return new View(root, loader.getController());
+	}
+
+	// The children of the root of the FXML, they are moved into the main window when it is shown
+	public static class View {
+
+		private final List<Node> nodes;
+		private final Object controller;
+
+		private View(Pane root, Object controller) {
+			this.nodes = new ArrayList<>(root.getChildren());
+			this.controller = controller;
+		}
+
+		public List<Node> getNodes() {
+			return nodes;
+		}
+
+		@SuppressWarnings("unchecked")
+		public <T> T getController() {
+			return (T) controller;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package log;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Properties;
+
+import db.DB;
+import db.DbException;
+
+// Messages of the background threads (write-behind, change log, replica, startup) written to
+// log.appFile by an AsyncFileAppender, so the thread that reports never waits for the disk.
+// The file is opened by the first message and flushed by shutdown when the application stops.
+public class AppLog {
+
+	private static AsyncFileAppender appender = null;
+	private static boolean closed = false;
+
+	public static void info(String source, String message) {
+		append("INFO", source, message);
+	}
+
+	public static void warn(String source, String message) {
+		append("WARN", source, message);
+	}
+
+	// The messages after it are dropped
+	public static synchronized void shutdown() {
+		closed = true;
+		if (appender != null) {
+			appender.close();
+			appender = null;
+		}
+	}
+
+	private static void append(String level, String source, String message) {
+		AsyncFileAppender current = appender();
+		if (current == null) {
+			return;
+		}
+		StringBuilder line = new StringBuilder(128)
+				.append(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS))
+				.append(' ').append(level).append(' ').append(source).append(": ");
+		// One line per message, the messages of the driver can have several
+		String text = String.valueOf(message);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			line.append(c == '\n' || c == '\r' ? ' ' : c);
+		}
+		current.append(line.toString());
+	}
+
+	private static synchronized AsyncFileAppender appender() {
+		if (appender == null && !closed) {
+			Properties props;
+			try {
+				props = DB.getProperties();
+			} catch (DbException e) {
+				// Without db.properties the defaults are used
+				props = new Properties();
+			}
+			appender = new AsyncFileAppender(props.getProperty("log.appFile", "application.log"),
+					DB.getInt(props, "log.maxFileBytes", 10 * 1024 * 1024),
+					DB.getInt(props, "log.maxFiles", 5),
+					DB.getInt(props, "log.queueCapacity", 1024));
+		}
+		return appender;
+	}
+}
@@ -0,0 +1,162 @@
+package log;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Appends lines to a local file from a background thread. The caller only offers the line
+// to a bounded queue and never waits for the disk: when the queue is full the line is
+// dropped and counted. The file is rotated when it reaches maxBytes, keeping maxFiles
+// old copies (file.1 is the newest one).
+public class AsyncFileAppender {
+
+	private static final int BATCH_SIZE = 256;
+	// Wakes the writer thread up on close, compared by identity
+	private static final String END = new String("");
+
+	private final Path file;
+	private final long maxBytes;
+	private final int maxFiles;
+	private final BlockingQueue<String> queue;
+	private final AtomicLong dropped = new AtomicLong();
+	private final Thread writerThread;
+
+	private volatile boolean closed = false;
+
+	// Only used by the writer thread
+	private Writer writer;
+	private long size;
+
+	public AsyncFileAppender(String file, long maxBytes, int maxFiles, int queueCapacity) {
+		this.file = Paths.get(file);
+		this.maxBytes = maxBytes;
+		this.maxFiles = maxFiles;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.writerThread = new Thread(this::writeLoop, "log-writer-" + this.file.getFileName());
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	// Returns false when the line was dropped
+	public boolean append(String line) {
+		if (closed || !queue.offer(line)) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	// Writes the lines still in the queue and closes the file. The thread is not interrupted,
+	// an interrupt during a write closes the file channel and the remaining lines would be lost.
+	public void close() {
+		closed = true;
+		// A full queue means the writer thread is not waiting for a line
+		queue.offer(END);
+		try {
+			writerThread.join(2000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeLoop() {
+		List<String> batch = new ArrayList<>(BATCH_SIZE);
+		while (!closed || !queue.isEmpty()) {
+			try {
+				String first = queue.poll(1, TimeUnit.SECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, BATCH_SIZE - 1);
+				write(batch);
+				batch.clear();
+			} catch (InterruptedException e) {
+				// The loop ends when the queue is empty
+			}
+		}
+		closeWriter();
+	}
+
+	private void write(List<String> lines) {
+		try {
+			for (String line : lines) {
+				if (line == END) {
+					continue;
+				}
+				if (writer == null) {
+					open();
+				}
+				writer.write(line);
+				writer.write('\n');
+				// Characters, not bytes, but the lines are ASCII
+				size += line.length() + 1;
+				if (maxBytes > 0 && size >= maxBytes) {
+					rotate();
+				}
+			}
+			if (writer != null) {
+				writer.flush();
+			}
+		} catch (IOException e) {
+			// The disk is full or the file is not writable, the next batch tries again
+			dropped.addAndGet(lines.size());
+			closeWriter();
+		}
+	}
+
+	private void open() throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND);
+		size = Files.size(file);
+	}
+
+	private void rotate() throws IOException {
+		closeWriter();
+		if (maxFiles <= 0) {
+			Files.deleteIfExists(file);
+			return;
+		}
+		for (int i = maxFiles - 1; i >= 1; i--) {
+			Path older = rotated(i);
+			if (Files.exists(older)) {
+				Files.move(older, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private Path rotated(int index) {
+		return file.resolveSibling(file.getFileName() + "." + index);
+	}
+
+	private void closeWriter() {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				// Nothing to do, the file is reopened on the next line
+			}
+			writer = null;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package metrics;
+
+import db.DB;
+import db.PooledDataSource;
+
+// Reads the pool of DB on every call, so it keeps working after DB.configure replaces the pool
+class ConnectionPoolGauges implements ConnectionPoolMXBean {
+
+	private static PooledDataSource pool() {
+		return (PooledDataSource) DB.getDataSource();
+	}
+
+	@Override
+	public int getActiveConnections() {
+		return pool().getActiveConnections();
+	}
+
+	@Override
+	public int getIdleConnections() {
+		return pool().getIdleConnections();
+	}
+
+	@Override
+	public int getTotalConnections() {
+		return pool().getTotalConnections();
+	}
+
+	@Override
+	public int getWaitingThreads() {
+		return pool().getWaitingThreads();
+	}
+
+	@Override
+	public int getMaxSize() {
+		return pool().getMaxSize();
+	}
+
+	@Override
+	public long getStatementCacheHits() {
+		return pool().getStatementCacheStats().getHits();
+	}
+
+	@Override
+	public long getStatementCacheMisses() {
+		return pool().getStatementCacheStats().getMisses();
+	}
+
+	@Override
+	public String toString() {
+		PooledDataSource pool = pool();
+		return "pool active=" + pool.getActiveConnections() + " idle=" + pool.getIdleConnections() + " total="
+				+ pool.getTotalConnections() + " waiting=" + pool.getWaitingThreads() + " max=" + pool.getMaxSize();
+	}
+}
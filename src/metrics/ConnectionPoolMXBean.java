@@ -0,0 +1,18 @@
+package metrics;
+
+public interface ConnectionPoolMXBean {
+
+	int getActiveConnections();
+
+	int getIdleConnections();
+
+	int getTotalConnections();
+
+	int getWaitingThreads();
+
+	int getMaxSize();
+
+	long getStatementCacheHits();
+
+	long getStatementCacheMisses();
+}
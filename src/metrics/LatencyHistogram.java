@@ -0,0 +1,105 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free histogram of durations in nanoseconds, in the log-linear layout of HdrHistogram:
+// every power of two is split in 16 buckets, so a percentile is at most 1/16 above the real
+// value whatever its magnitude. Recording is one array increment, no object is allocated.
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Enough buckets for any positive long
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder total = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(indexOf(value));
+		total.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	// Largest value that falls in the bucket
+	static long highestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	// The counters are read one by one while other threads record, so the snapshot
+	// may be a few calls off, which does not matter for monitoring
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return new Snapshot(copy, total.sum(), sum.sum(), max.get());
+	}
+
+	public static class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		private Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMeanMillis() {
+			return count == 0 ? 0.0 : sum / (double) count / 1_000_000.0;
+		}
+
+		public double getMaxMillis() {
+			return max / 1_000_000.0;
+		}
+
+		// Nearest-rank percentile, p between 0 and 100
+		public double getPercentileMillis(double p) {
+			long recorded = 0;
+			for (long c : counts) {
+				recorded += c;
+			}
+			if (recorded == 0) {
+				return 0.0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(p / 100.0 * recorded));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(highestValue(i), max) / 1_000_000.0;
+				}
+			}
+			return getMaxMillis();
+		}
+	}
+}
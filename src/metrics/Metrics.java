@@ -0,0 +1,150 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import db.DB;
+import log.AsyncFileAppender;
+
+// Latency metrics of the DAO methods and gauges of the connection pool. They are published
+// as MBeans under the "workshop" domain (jconsole, VisualVM...) and written every
+// metrics.logIntervalSeconds to metrics.logFile. metrics.enabled=false turns everything off.
+public class Metrics {
+
+	private static final String DOMAIN = "workshop";
+
+	private static final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+	private static final ConnectionPoolGauges poolGauges = new ConnectionPoolGauges();
+	private static ScheduledExecutorService reporter = null;
+	private static AsyncFileAppender appender = null;
+	private static Boolean enabled = null;
+
+	public static synchronized boolean isEnabled() {
+		if (enabled == null) {
+			enabled = !"false".equalsIgnoreCase(DB.getProperties().getProperty("metrics.enabled", "true").trim());
+			if (enabled) {
+				register("type=ConnectionPool", poolGauges);
+				startReporter(DB.getProperties());
+			}
+		}
+		return enabled;
+	}
+
+	// Wraps the DAO in a proxy that records the calls of every method of the interface
+	public static <T> T instrument(Class<T> iface, T target) {
+		if (!isEnabled()) {
+			return target;
+		}
+		Map<Method, OperationMetrics> byMethod = new HashMap<>();
+		for (Method method : iface.getMethods()) {
+			byMethod.put(method, operation(operationName(iface, method)));
+		}
+		return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface },
+				new InstrumentedProxy(target, byMethod)));
+	}
+
+	public static OperationMetrics operation(String name) {
+		return operations.computeIfAbsent(name, key -> {
+			OperationMetrics operation = new OperationMetrics(key);
+			register("type=DaoOperation,name=" + ObjectName.quote(key), operation);
+			return operation;
+		});
+	}
+
+	public static List<OperationMetrics> getOperations() {
+		return new ArrayList<>(operations.values());
+	}
+
+	public static ConnectionPoolMXBean getConnectionPool() {
+		return poolGauges;
+	}
+
+	// SellerDao.findAll, and the parameter types for overloads: SellerDao.count(SellerSearchCriteria)
+	private static String operationName(Class<?> iface, Method method) {
+		StringBuilder name = new StringBuilder(iface.getSimpleName()).append('.').append(method.getName());
+		int overloads = 0;
+		for (Method other : iface.getMethods()) {
+			if (other.getName().equals(method.getName())) {
+				overloads++;
+			}
+		}
+		if (overloads > 1 && method.getParameterCount() > 0) {
+			name.append('(');
+			Class<?>[] types = method.getParameterTypes();
+			for (int i = 0; i < types.length; i++) {
+				name.append(i == 0 ? "" : ",").append(types[i].getSimpleName());
+			}
+			name.append(')');
+		}
+		return name.toString();
+	}
+
+	private static void register(String properties, Object mbean) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(DOMAIN + ":" + properties);
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(mbean, objectName);
+			}
+		} catch (JMException e) {
+			// Without JMX the metrics are still written to the log file
+		}
+	}
+
+	private static void startReporter(Properties props) {
+		int interval = DB.getInt(props, "metrics.logIntervalSeconds", 60);
+		String file = props.getProperty("metrics.logFile", "metrics.log");
+		if (interval <= 0) {
+			return;
+		}
+		appender = new AsyncFileAppender(file, DB.getInt(props, "log.maxFileBytes", 10 * 1024 * 1024),
+				DB.getInt(props, "log.maxFiles", 5), DB.getInt(props, "log.queueCapacity", 1024));
+		reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleWithFixedDelay(Metrics::writeSnapshot, interval, interval, TimeUnit.SECONDS);
+	}
+
+	// Cumulative values since the start of the application, one line per method already called
+	private static void writeSnapshot() {
+		try {
+			String time = LocalDateTime.now().withNano(0).toString();
+			appender.append(time + " " + poolGauges);
+			for (OperationMetrics operation : operations.values()) {
+				if (operation.getCount() > 0) {
+					appender.append(time + " " + operation);
+				}
+			}
+		} catch (RuntimeException e) {
+			// The pool is being replaced, the next snapshot tries again
+		}
+	}
+
+	// Writes a last snapshot, the calls since the previous one are not lost
+	public static synchronized void shutdown() {
+		if (reporter != null) {
+			reporter.shutdownNow();
+			reporter = null;
+			writeSnapshot();
+			appender.close();
+			appender = null;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Calls, errors and latency of one DAO method
+public class OperationMetrics implements OperationMetricsMXBean {
+
+	private final String name;
+	private final LongAdder errors = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	OperationMetrics(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	// Failed calls are timed too, a timeout is a slow call
+	public void record(long nanos, boolean failed) {
+		latency.record(nanos);
+		if (failed) {
+			errors.increment();
+		}
+	}
+
+	public LatencyHistogram.Snapshot snapshot() {
+		return latency.snapshot();
+	}
+
+	@Override
+	public long getCount() {
+		return latency.snapshot().getCount();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		return latency.snapshot().getMeanMillis();
+	}
+
+	@Override
+	public double getP50Millis() {
+		return latency.snapshot().getPercentileMillis(50);
+	}
+
+	@Override
+	public double getP90Millis() {
+		return latency.snapshot().getPercentileMillis(90);
+	}
+
+	@Override
+	public double getP99Millis() {
+		return latency.snapshot().getPercentileMillis(99);
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return latency.snapshot().getMaxMillis();
+	}
+
+	@Override
+	public String toString() {
+		LatencyHistogram.Snapshot s = latency.snapshot();
+		return String.format("%s count=%d errors=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+				name, s.getCount(), errors.sum(), s.getMeanMillis(), s.getPercentileMillis(50),
+				s.getPercentileMillis(90), s.getPercentileMillis(99), s.getMaxMillis());
+	}
+}
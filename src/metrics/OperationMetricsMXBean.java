@@ -0,0 +1,18 @@
+package metrics;
+
+public interface OperationMetricsMXBean {
+
+	long getCount();
+
+	long getErrors();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP90Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+}
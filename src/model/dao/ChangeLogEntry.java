@@ -0,0 +1,65 @@
+package model.dao;
+
+// One row of the change_log table: a committed insert, update or delete of one row
+public class ChangeLogEntry {
+
+	public static final String SELLER = "seller";
+	public static final String DEPARTMENT = "department";
+
+	public enum Operation {
+		INSERT("I"), UPDATE("U"), DELETE("D");
+
+		private final String code;
+
+		private Operation(String code) {
+			this.code = code;
+		}
+
+		public String getCode() {
+			return code;
+		}
+
+		public static Operation fromCode(String code) {
+			for (Operation operation : values()) {
+				if (operation.code.equals(code)) {
+					return operation;
+				}
+			}
+			throw new IllegalArgumentException("Unknown change log operation: " + code);
+		}
+	}
+
+	private final long sequence;
+	private final String table;
+	private final int rowId;
+	private final Operation operation;
+
+	public ChangeLogEntry(long sequence, String table, int rowId, Operation operation) {
+		this.sequence = sequence;
+		this.table = table;
+		this.rowId = rowId;
+		this.operation = operation;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public int getRowId() {
+		return rowId;
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	@Override
+	public String toString() {
+		return "ChangeLogEntry [sequence=" + sequence + ", table=" + table + ", rowId=" + rowId + ", operation="
+				+ operation + "]";
+	}
+}
@@ -0,0 +1,82 @@
+package model.dao;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import model.entities.Department;
+
+// Read-through cache of the department table. Departments are few and rarely change, so the
+// whole table is kept as one immutable snapshot that is replaced, never modified. The snapshot
+// expires after the TTL (0 keeps it until it is invalidated) and the writes invalidate it.
+public class DepartmentCache {
+
+	private final long ttlMillis;
+	private volatile Snapshot snapshot = null;
+
+	public DepartmentCache(long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+	}
+
+	public List<Department> getAll(Supplier<List<Department>> loader) {
+		return getSnapshot(loader).departments;
+	}
+
+	public Department getById(Integer id, Supplier<List<Department>> loader) {
+		return getSnapshot(loader).byId.get(id);
+	}
+
+	// Gives the shared instance of the department when the snapshot has it with the same name,
+	// so the sellers loaded by the DAO point to the same objects as the department list
+	public Department resolve(int id, String name) {
+		Snapshot current = snapshot;
+		if (current != null && !current.isExpired()) {
+			Department dep = current.byId.get(id);
+			if (dep != null && Objects.equals(dep.getName(), name)) {
+				return dep;
+			}
+		}
+		return new Department(id, name);
+	}
+
+	public void invalidate() {
+		snapshot = null;
+	}
+
+	private Snapshot getSnapshot(Supplier<List<Department>> loader) {
+		Snapshot current = snapshot;
+		if (current != null && !current.isExpired()) {
+			return current;
+		}
+		synchronized (this) {
+			// Another thread may have loaded it while this one was waiting
+			current = snapshot;
+			if (current == null || current.isExpired()) {
+				current = new Snapshot(loader.get());
+				snapshot = current;
+			}
+			return current;
+		}
+	}
+
+	private class Snapshot {
+
+		private final List<Department> departments;
+		private final Map<Integer, Department> byId = new HashMap<>();
+		private final long loadedAt = System.currentTimeMillis();
+
+		private Snapshot(List<Department> departments) {
+			this.departments = Collections.unmodifiableList(departments);
+			for (Department dep : departments) {
+				byId.put(dep.getId(), dep);
+			}
+		}
+
+		private boolean isExpired() {
+			return ttlMillis > 0 && System.currentTimeMillis() - loadedAt > ttlMillis;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package model.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import model.entities.Department;
@@ -9,6 +10,9 @@ public interface DepartmentDao {
 	void insert(Department department);
 	void update(Department department);
 	void deleteById(Integer id);
+	void insertAll(Collection<Department> departments);
+	void updateAll(Collection<Department> departments);
+	void deleteByIds(Collection<Integer> ids);
 	Department findById(Integer id);
 	List<Department> findAll();
 }
@@ -0,0 +1,193 @@
+package model.dao;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded LRU cache of entities by id. The keys are spread over stripes, each one is an
+// access ordered LinkedHashMap with its own lock, so threads working on different stripes
+// do not wait for each other. Every stripe evicts its least recently used entry when full.
+// A value read from the database is put with the stamp taken before the read: when an
+// invalidation of its stripe ran since, the value may be older than the row and is dropped.
+public class EntityCache<K, V> {
+
+	private static final int STRIPES = 16;
+
+	private final List<Stripe> stripes = new ArrayList<>(STRIPES);
+	private final Stats stats = new Stats();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	public EntityCache(int maxSize) {
+		int perStripe = Math.max(1, (maxSize + STRIPES - 1) / STRIPES);
+		for (int i = 0; i < STRIPES; i++) {
+			stripes.add(new Stripe(perStripe));
+		}
+	}
+
+	// Taken before reading the values to put with putIfUnchanged
+	public long stamp() {
+		return invalidations.get();
+	}
+
+	public V get(K key) {
+		Stripe stripe = stripeFor(key);
+		stripe.lock.lock();
+		try {
+			V value = stripe.entries.get(key);
+			if (value == null) {
+				stats.misses.increment();
+			} else {
+				stats.hits.increment();
+			}
+			return value;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	public void put(K key, V value) {
+		Stripe stripe = stripeFor(key);
+		stripe.lock.lock();
+		try {
+			stripe.entries.put(key, value);
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	// Returns false when the stripe of the key was invalidated after the stamp was taken
+	public boolean putIfUnchanged(K key, V value, long stamp) {
+		Stripe stripe = stripeFor(key);
+		stripe.lock.lock();
+		try {
+			if (stripe.invalidatedAt > stamp) {
+				return false;
+			}
+			stripe.entries.put(key, value);
+			return true;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	public void invalidate(K key) {
+		Stripe stripe = stripeFor(key);
+		stripe.lock.lock();
+		try {
+			stripe.entries.remove(key);
+			stripe.invalidatedAt = invalidations.incrementAndGet();
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	public void invalidateAll() {
+		for (Stripe stripe : stripes) {
+			stripe.lock.lock();
+			try {
+				stripe.entries.clear();
+				stripe.invalidatedAt = invalidations.incrementAndGet();
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+	}
+
+	// Time spent by the caller to load a missing entry from the database
+	public void recordLoad(long nanos) {
+		stats.loads.increment();
+		stats.loadNanos.add(nanos);
+	}
+
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			stripe.lock.lock();
+			try {
+				size += stripe.entries.size();
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+		return size;
+	}
+
+	public Stats getStats() {
+		return stats;
+	}
+
+	private Stripe stripeFor(K key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return stripes.get(h & (STRIPES - 1));
+	}
+
+	private class Stripe {
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final LinkedHashMap<K, V> entries;
+		// Value of invalidations at the last invalidation of the stripe, guarded by lock
+		private long invalidatedAt;
+
+		private Stripe(int maxSize) {
+			entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+					if (size() > maxSize) {
+						stats.evictions.increment();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+	}
+
+	public static class Stats {
+
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder evictions = new LongAdder();
+		private final LongAdder loads = new LongAdder();
+		private final LongAdder loadNanos = new LongAdder();
+
+		public long getHits() {
+			return hits.sum();
+		}
+
+		public long getMisses() {
+			return misses.sum();
+		}
+
+		public double getHitRate() {
+			long requests = getHits() + getMisses();
+			return requests == 0 ? 0.0 : (double) getHits() / requests;
+		}
+
+		public long getEvictions() {
+			return evictions.sum();
+		}
+
+		public long getLoads() {
+			return loads.sum();
+		}
+
+		public double getAverageLoadMillis() {
+			long count = getLoads();
+			return count == 0 ? 0.0 : (double) loadNanos.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("CacheStats [hits=%d, misses=%d, hitRate=%.3f, evictions=%d, loads=%d, avgLoadMs=%.3f]",
+					getHits(), getMisses(), getHitRate(), getEvictions(), getLoads(), getAverageLoadMillis());
+		}
+	}
+}
@@ -1,20 +1,151 @@
 package model.dao;
 
-import java.sql.Connection;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
 
 import db.DB;
+import metrics.Metrics;
+import model.dao.impl.CachingSellerDao;
+import model.dao.impl.ChangeLog;
+import model.dao.impl.ChangeLogPoller;
 import model.dao.impl.DepartmentDaoJDBC;
+import model.dao.impl.LocalReplica;
+import model.dao.impl.ReplicaDepartmentDao;
+import model.dao.impl.ReplicaSellerDao;
 import model.dao.impl.SellerDaoJDBC;
+import model.entities.Seller;
 
 public class FactoryDao {
 	
-	public static Connection conn;
+	private static DepartmentCache departmentCache = null;
+	private static EntityCache<Integer, Seller> sellerCache = null;
+	private static LocalReplica replica = null;
+	private static ChangeLog changeLog = null;
+	private static ChangeLogPoller changeLogPoller = null;
+
+	// Written in the change_log rows of this instance, its poller skips them
+	private static final String ORIGIN = UUID.randomUUID().toString();
 	
 	public static SellerDao createSellerDao() {
-		return new SellerDaoJDBC(DB.getConnection());
+		SellerDao dao = new SellerDaoJDBC(DB.getDataSource(), getDepartmentCache(), getChangeLog());
+		LocalReplica localReplica = getReplica();
+		EntityCache<Integer, Seller> cache = getSellerCache();
+		if (localReplica != null) {
+			dao = new ReplicaSellerDao(dao, localReplica);
+		} else if (cache != null) {
+			dao = new CachingSellerDao(dao, cache);
+		}
+		// Timed outside the cache, the latency is the one the services see
+		return Metrics.instrument(SellerDao.class, dao);
 	}
 	
 	public static DepartmentDao createDepartmentDao() {
-		return new DepartmentDaoJDBC(DB.getConnection());
+		DepartmentDao dao = new DepartmentDaoJDBC(DB.getDataSource(), getChangeLog());
+		LocalReplica localReplica = getReplica();
+		if (localReplica != null) {
+			dao = new ReplicaDepartmentDao(dao, localReplica);
+		}
+		return Metrics.instrument(DepartmentDao.class, dao);
+	}
+	
+	// SQL of the first screens, DB.prepareStatements keeps them ready on the pool connections
+	public static List<String> hotStatements() {
+		List<String> sql = new ArrayList<>(SellerDaoJDBC.hotStatements());
+		sql.addAll(DepartmentDaoJDBC.hotStatements());
+		return sql;
+	}
+	
+	// One cache shared by all the services and DAOs
+	public static synchronized DepartmentCache getDepartmentCache() {
+		if (departmentCache == null) {
+			departmentCache = new DepartmentCache(DB.getInt(DB.getProperties(), "cache.department.ttlMillis", 0));
+		}
+		return departmentCache;
+	}
+	
+	// Shared seller cache, it is null when cache.seller.maxSize is 0 or the replica has the sellers
+	public static synchronized EntityCache<Integer, Seller> getSellerCache() {
+		if (sellerCache == null && getReplica() == null) {
+			int maxSize = DB.getInt(DB.getProperties(), "cache.seller.maxSize", 10000);
+			if (maxSize > 0) {
+				sellerCache = new EntityCache<>(maxSize);
+			}
+		}
+		return sellerCache;
+	}
+	
+	// Local copy of the seller and department tables for the reads, it is null when
+	// replica.enabled is not true. It is synced every replica.syncIntervalSeconds.
+	public static synchronized LocalReplica getReplica() {
+		Properties props = DB.getProperties();
+		if (replica == null && Boolean.parseBoolean(props.getProperty("replica.enabled", "false"))) {
+			replica = new LocalReplica(DB.getDataSource(), getDepartmentCache(),
+					Paths.get(props.getProperty("replica.snapshotFile", "replica.snapshot")));
+			replica.start(DB.getInt(props, "replica.syncIntervalSeconds", 30));
+		}
+		return replica;
+	}
+	
+	// Writer of the change_log table, it writes nothing when changeLog.enabled is not true
+	public static synchronized ChangeLog getChangeLog() {
+		if (changeLog == null) {
+			changeLog = isChangeLogEnabled() ? new ChangeLog(ORIGIN) : ChangeLog.DISABLED;
+		}
+		return changeLog;
+	}
+	
+	// Reads the changes of the other instances every changeLog.pollIntervalSeconds, it is null
+	// when changeLog.enabled is not true. The caches drop only the changed rows, and the replica
+	// syncs at once instead of waiting for its interval.
+	public static synchronized ChangeLogPoller getChangeLogPoller() {
+		if (changeLogPoller == null && isChangeLogEnabled()) {
+			Properties props = DB.getProperties();
+			changeLogPoller = new ChangeLogPoller(DB.getDataSource(), ORIGIN,
+					DB.getInt(props, "changeLog.retentionHours", 24) * 3_600_000L);
+			changeLogPoller.addListener(ChangeLogEntry.SELLER, changes -> {
+				EntityCache<Integer, Seller> cache = getSellerCache();
+				if (cache != null) {
+					for (ChangeLogEntry change : changes) {
+						cache.invalidate(change.getRowId());
+					}
+				}
+				syncReplica();
+			});
+			// The sellers hold their department, they are dropped with it
+			changeLogPoller.addListener(ChangeLogEntry.DEPARTMENT, changes -> {
+				getDepartmentCache().invalidate();
+				EntityCache<Integer, Seller> cache = getSellerCache();
+				if (cache != null) {
+					cache.invalidateAll();
+				}
+				syncReplica();
+			});
+			changeLogPoller.start(DB.getInt(props, "changeLog.pollIntervalSeconds", 10));
+		}
+		return changeLogPoller;
+	}
+	
+	// Stops the threads of the poller and the replica before the pool is closed
+	public static synchronized void shutdown() {
+		if (changeLogPoller != null) {
+			changeLogPoller.stop();
+		}
+		if (replica != null) {
+			replica.stop();
+		}
+	}
+	
+	private static boolean isChangeLogEnabled() {
+		return Boolean.parseBoolean(DB.getProperties().getProperty("changeLog.enabled", "false"));
+	}
+	
+	private static void syncReplica() {
+		LocalReplica localReplica = getReplica();
+		if (localReplica != null) {
+			localReplica.sync();
+		}
 	}
 }
@@ -0,0 +1,45 @@
+package model.dao;
+
+import java.util.List;
+
+// One page of a keyset pagination with the requests of the next and previous pages
+public class Page<T> {
+
+	private final List<T> content;
+	private final int size;
+	private final boolean hasNext;
+	private final boolean hasPrevious;
+
+	public Page(List<T> content, int size, boolean hasNext, boolean hasPrevious) {
+		this.content = content;
+		this.size = size;
+		this.hasNext = hasNext;
+		this.hasPrevious = hasPrevious;
+	}
+
+	public List<T> getContent() {
+		return content;
+	}
+
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+	public boolean hasPrevious() {
+		return hasPrevious;
+	}
+
+	public PageRequest<T> nextRequest() {
+		if (!hasNext || content.isEmpty()) {
+			return null;
+		}
+		return PageRequest.after(content.get(content.size() - 1), size);
+	}
+
+	public PageRequest<T> previousRequest() {
+		if (!hasPrevious || content.isEmpty()) {
+			return null;
+		}
+		return PageRequest.before(content.get(0), size);
+	}
+}
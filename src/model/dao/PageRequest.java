@@ -0,0 +1,67 @@
+package model.dao;
+
+// Asks for one page of a keyset pagination. The page starts right after (or ends
+// right before) the anchor entity, so the database seeks on the key instead of
+// skipping rows with OFFSET. OFFSET is only used to jump far from every known anchor.
+public class PageRequest<T> {
+
+	public enum Direction {
+		FIRST, AFTER, BEFORE, OFFSET
+	}
+
+	private final Direction direction;
+	private final T anchor;
+	private final int offset;
+	private final int size;
+
+	private PageRequest(Direction direction, T anchor, int offset, int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Page size must be positive: " + size);
+		}
+		if (offset < 0) {
+			throw new IllegalArgumentException("Offset must not be negative: " + offset);
+		}
+		this.direction = direction;
+		this.anchor = anchor;
+		this.offset = offset;
+		this.size = size;
+	}
+
+	public static <T> PageRequest<T> first(int size) {
+		return new PageRequest<>(Direction.FIRST, null, 0, size);
+	}
+
+	public static <T> PageRequest<T> after(T anchor, int size) {
+		return new PageRequest<>(Direction.AFTER, anchor, 0, size);
+	}
+
+	public static <T> PageRequest<T> before(T anchor, int size) {
+		return new PageRequest<>(Direction.BEFORE, anchor, 0, size);
+	}
+
+	// The database reads and skips the offset rows, one query instead of one per page skipped
+	public static <T> PageRequest<T> at(int offset, int size) {
+		return new PageRequest<>(Direction.OFFSET, null, offset, size);
+	}
+
+	public Direction getDirection() {
+		return direction;
+	}
+
+	public T getAnchor() {
+		return anchor;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "PageRequest [direction=" + direction + ", anchor=" + anchor + ", offset=" + offset + ", size=" + size + "]";
+	}
+}
@@ -0,0 +1,6 @@
+package model.dao;
+
+// Receives the rows of a streaming query one at a time, returning false stops the query
+public interface RowCallback<T> {
+	boolean accept(T row);
+}
@@ -1,8 +1,10 @@
 package model.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import model.entities.Department;
+import model.entities.SalaryStatistics;
 import model.entities.Seller;
 
 public interface SellerDao {
@@ -10,7 +12,18 @@ public interface SellerDao {
 	void insert(Seller seller);
 	void update(Seller seller);
 	void deleteById(Integer id);
+	void insertAll(Collection<Seller> sellers);
+	void updateAll(Collection<Seller> sellers);
+	void deleteByIds(Collection<Integer> ids);
 	Seller findById(Integer id);
 	List<Seller> findAll();
 	List<Seller> findAllByDepartment(Department department);
+	Page<Seller> findPage(PageRequest<Seller> request);
+	int count();
+	Page<Seller> search(SellerSearchCriteria criteria, PageRequest<Seller> request);
+	int count(SellerSearchCriteria criteria);
+	boolean existsByEmail(String email, Integer excludingId);
+	void streamAll(RowCallback<Seller> callback);
+	List<SalaryStatistics> salaryStatisticsByDepartment();
+	List<SalaryStatistics> salaryStatisticsByBirthYear(int yearsPerGroup);
 }
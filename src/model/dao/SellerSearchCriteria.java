@@ -0,0 +1,80 @@
+package model.dao;
+
+// Filters of the seller search, the fields left null are not used,
+// and the order of the results (by id when nothing is set)
+public class SellerSearchCriteria {
+
+	private String namePrefix;
+	private String emailPrefix;
+	private Integer departmentId;
+	private Double minSalary;
+	private Double maxSalary;
+	private SellerSortKey sortKey = SellerSortKey.ID;
+	private boolean ascending = true;
+
+	public String getNamePrefix() {
+		return namePrefix;
+	}
+
+	public void setNamePrefix(String namePrefix) {
+		this.namePrefix = namePrefix;
+	}
+
+	public String getEmailPrefix() {
+		return emailPrefix;
+	}
+
+	public void setEmailPrefix(String emailPrefix) {
+		this.emailPrefix = emailPrefix;
+	}
+
+	public Integer getDepartmentId() {
+		return departmentId;
+	}
+
+	public void setDepartmentId(Integer departmentId) {
+		this.departmentId = departmentId;
+	}
+
+	public Double getMinSalary() {
+		return minSalary;
+	}
+
+	public void setMinSalary(Double minSalary) {
+		this.minSalary = minSalary;
+	}
+
+	public Double getMaxSalary() {
+		return maxSalary;
+	}
+
+	public void setMaxSalary(Double maxSalary) {
+		this.maxSalary = maxSalary;
+	}
+
+	public SellerSortKey getSortKey() {
+		return sortKey;
+	}
+
+	public boolean isAscending() {
+		return ascending;
+	}
+
+	public void setSort(SellerSortKey sortKey, boolean ascending) {
+		this.sortKey = sortKey;
+		this.ascending = ascending;
+	}
+
+	// True when there is no filter, the order does not matter here
+	public boolean isEmpty() {
+		return (namePrefix == null || namePrefix.isEmpty()) && (emailPrefix == null || emailPrefix.isEmpty())
+				&& departmentId == null && minSalary == null && maxSalary == null;
+	}
+
+	@Override
+	public String toString() {
+		return "SellerSearchCriteria [namePrefix=" + namePrefix + ", emailPrefix=" + emailPrefix + ", departmentId="
+				+ departmentId + ", minSalary=" + minSalary + ", maxSalary=" + maxSalary + ", sortKey=" + sortKey
+				+ ", ascending=" + ascending + "]";
+	}
+}
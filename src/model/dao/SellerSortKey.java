@@ -0,0 +1,33 @@
+package model.dao;
+
+import java.util.function.Function;
+
+import model.entities.Seller;
+
+// The columns the seller queries can be ordered by. Only these SQL expressions are ever
+// concatenated into ORDER BY, the value function gives the key of the anchor row of a page.
+public enum SellerSortKey {
+
+	ID("seller.Id", Seller::getId),
+	NAME("seller.Name", Seller::getName),
+	EMAIL("seller.Email", Seller::getEmail),
+	BIRTH_DATE("seller.BirthDate", seller -> new java.sql.Timestamp(seller.getBirthDate().getTime())),
+	BASE_SALARY("seller.BaseSalary", Seller::getBaseSalary),
+	DEPARTMENT("department.Name", seller -> seller.getDepartment().getName());
+
+	private final String column;
+	private final Function<Seller, Object> value;
+
+	private SellerSortKey(String column, Function<Seller, Object> value) {
+		this.column = column;
+		this.value = value;
+	}
+
+	public String getColumn() {
+		return column;
+	}
+
+	public Object valueOf(Seller seller) {
+		return value.apply(seller);
+	}
+}
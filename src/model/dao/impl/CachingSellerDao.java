@@ -0,0 +1,161 @@
+package model.dao.impl;
+
+import java.util.Collection;
+import java.util.List;
+
+import model.dao.EntityCache;
+import model.dao.Page;
+import model.dao.PageRequest;
+import model.dao.RowCallback;
+import model.dao.SellerDao;
+import model.dao.SellerSearchCriteria;
+import model.entities.Department;
+import model.entities.SalaryStatistics;
+import model.entities.Seller;
+
+// Decorator that serves findById from a bounded cache. The sellers read by the other queries
+// are put in the cache too, and the writes go to the database first and then drop the entry.
+// A read that started before the drop does not put its older row back. The cache keeps its
+// own copies, the sellers returned are changed by the forms.
+public class CachingSellerDao implements SellerDao {
+
+	private final SellerDao delegate;
+	private final EntityCache<Integer, Seller> cache;
+
+	public CachingSellerDao(SellerDao delegate, EntityCache<Integer, Seller> cache) {
+		this.delegate = delegate;
+		this.cache = cache;
+	}
+
+	@Override
+	public void insert(Seller seller) {
+		delegate.insert(seller);
+	}
+
+	@Override
+	public void update(Seller seller) {
+		try {
+			delegate.update(seller);
+		} finally {
+			cache.invalidate(seller.getId());
+		}
+	}
+
+	@Override
+	public void deleteById(Integer id) {
+		try {
+			delegate.deleteById(id);
+		} finally {
+			cache.invalidate(id);
+		}
+	}
+
+	@Override
+	public void insertAll(Collection<Seller> sellers) {
+		delegate.insertAll(sellers);
+	}
+
+	@Override
+	public void updateAll(Collection<Seller> sellers) {
+		try {
+			delegate.updateAll(sellers);
+		} finally {
+			for (Seller seller : sellers) {
+				cache.invalidate(seller.getId());
+			}
+		}
+	}
+
+	@Override
+	public void deleteByIds(Collection<Integer> ids) {
+		try {
+			delegate.deleteByIds(ids);
+		} finally {
+			for (Integer id : ids) {
+				cache.invalidate(id);
+			}
+		}
+	}
+
+	@Override
+	public Seller findById(Integer id) {
+		Seller seller = cache.get(id);
+		if (seller != null) {
+			return new Seller(seller);
+		}
+		long stamp = cache.stamp();
+		long start = System.nanoTime();
+		seller = delegate.findById(id);
+		cache.recordLoad(System.nanoTime() - start);
+		if (seller != null) {
+			cache.putIfUnchanged(id, new Seller(seller), stamp);
+		}
+		return seller;
+	}
+
+	@Override
+	public List<Seller> findAll() {
+		long stamp = cache.stamp();
+		return remember(delegate.findAll(), stamp);
+	}
+
+	@Override
+	public List<Seller> findAllByDepartment(Department department) {
+		long stamp = cache.stamp();
+		return remember(delegate.findAllByDepartment(department), stamp);
+	}
+
+	@Override
+	public Page<Seller> findPage(PageRequest<Seller> request) {
+		long stamp = cache.stamp();
+		Page<Seller> page = delegate.findPage(request);
+		remember(page.getContent(), stamp);
+		return page;
+	}
+
+	@Override
+	public int count() {
+		return delegate.count();
+	}
+
+	@Override
+	public Page<Seller> search(SellerSearchCriteria criteria, PageRequest<Seller> request) {
+		long stamp = cache.stamp();
+		Page<Seller> page = delegate.search(criteria, request);
+		remember(page.getContent(), stamp);
+		return page;
+	}
+
+	@Override
+	public int count(SellerSearchCriteria criteria) {
+		return delegate.count(criteria);
+	}
+
+	@Override
+	public boolean existsByEmail(String email, Integer excludingId) {
+		return delegate.existsByEmail(email, excludingId);
+	}
+
+	// Streamed rows are not cached, the caller expects constant memory
+	@Override
+	public void streamAll(RowCallback<Seller> callback) {
+		delegate.streamAll(callback);
+	}
+
+	@Override
+	public List<SalaryStatistics> salaryStatisticsByDepartment() {
+		return delegate.salaryStatisticsByDepartment();
+	}
+
+	@Override
+	public List<SalaryStatistics> salaryStatisticsByBirthYear(int yearsPerGroup) {
+		return delegate.salaryStatisticsByBirthYear(yearsPerGroup);
+	}
+
+	private List<Seller> remember(List<Seller> sellers, long stamp) {
+		for (Seller seller : sellers) {
+			cache.putIfUnchanged(seller.getId(), new Seller(seller), stamp);
+		}
+		return sellers;
+	}
+}
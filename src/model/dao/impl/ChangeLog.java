@@ -0,0 +1,70 @@
+package model.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.function.Function;
+
+import model.dao.ChangeLogEntry;
+
+// Writes the change_log table (database/change_log.sql) in the transaction of every write of
+// the DAOs, so a change is in the log exactly when it is committed. The rows carry the origin
+// of this instance of the application, its own poller skips them. DISABLED writes nothing and
+// leaves the writes in autocommit.
+public class ChangeLog {
+
+	public static final ChangeLog DISABLED = new ChangeLog(null);
+
+	private static final String INSERT_SQL =
+			"INSERT INTO change_log (TableName, RowId, Operation, Origin) VALUES (?, ?, ?, ?)";
+
+	private final String origin;
+
+	public ChangeLog(String origin) {
+		this.origin = origin;
+	}
+
+	// Starts the transaction of the write of one row
+	void begin(Connection conn) throws SQLException {
+		if (origin != null) {
+			conn.setAutoCommit(false);
+		}
+	}
+
+	// Logs the write of the row and commits both
+	void commit(Connection conn, String table, int rowId, ChangeLogEntry.Operation operation) throws SQLException {
+		if (origin != null) {
+			try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+				bind(ps, table, rowId, operation);
+				ps.executeUpdate();
+			}
+			conn.commit();
+		}
+	}
+
+	// Logs the rows of each chunk of a JdbcBatch before the chunk is committed. The inserts
+	// take the generated keys, the other writes the id of the item.
+	<T> JdbcBatch.ChunkWriter<T> chunkWriter(String table, ChangeLogEntry.Operation operation,
+			Function<T, Integer> id) {
+		if (origin == null) {
+			return null;
+		}
+		return (conn, chunk, keys) -> {
+			try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+				for (int i = 0; i < chunk.size(); i++) {
+					bind(ps, table, keys != null ? keys[i] : id.apply(chunk.get(i)), operation);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+			}
+		};
+	}
+
+	private void bind(PreparedStatement ps, String table, int rowId, ChangeLogEntry.Operation operation)
+			throws SQLException {
+		ps.setString(1, table);
+		ps.setInt(2, rowId);
+		ps.setString(3, operation.getCode());
+		ps.setString(4, origin);
+	}
+}
@@ -0,0 +1,229 @@
+package model.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import db.DB;
+import db.DbException;
+import log.AppLog;
+import model.dao.ChangeLogEntry;
+
+// Reads the change_log rows written by the other instances of the application and hands the
+// ones of each table to its listeners, in one list per poll. Only the rows after the highest
+// sequence read are queried. An AUTO_INCREMENT value can commit after a bigger one, so the
+// sequences missing below it are looked up by key in the next polls, for a while. Most of
+// them never show up: a rolled back transaction, or the values a multi-row INSERT of a batch
+// reserved and did not use, so they never hold back the rows after them.
+public class ChangeLogPoller {
+
+	private static final String MAX_SEQ_SQL = "SELECT MAX(Seq) FROM change_log";
+	private static final String POLL_SQL =
+			"SELECT Seq, TableName, RowId, Operation, Origin FROM change_log WHERE Seq > ? ORDER BY Seq LIMIT ?";
+	// Always the same number of parameters so the statement is cached, the unused ones are -1
+	private static final int GAPS_PER_QUERY = 50;
+	private static final String GAPS_SQL =
+			"SELECT Seq, TableName, RowId, Operation, Origin FROM change_log WHERE Seq IN ("
+					+ String.join(",", Collections.nCopies(GAPS_PER_QUERY, "?")) + ")";
+	private static final String PURGE_SQL = "DELETE FROM change_log WHERE ChangedAt < ?";
+
+	private static final int MAX_ROWS_PER_POLL = 1000;
+	// A transaction still running commits its sequence within this time, or never
+	private static final long GAP_WAIT_MILLIS = 30_000;
+	// A bigger hole, like the values left by a big rolled back batch, is only watched at its end
+	private static final int MAX_OPEN_GAPS = 200;
+	private static final long PURGE_INTERVAL_MILLIS = 3_600_000;
+
+	private final DataSource dataSource;
+	private final String origin;
+	private final long retentionMillis;
+	private final Map<String, List<Consumer<List<ChangeLogEntry>>>> listeners = new ConcurrentHashMap<>();
+	private ScheduledExecutorService scheduler;
+
+	// Guarded by this. Every sequence up to highestSequence was handled, except the gaps: the
+	// sequences not seen yet, with the time they were found missing.
+	private long highestSequence = -1;
+	private final TreeMap<Long, Long> gaps = new TreeMap<>();
+	private long lastPurge;
+
+	public ChangeLogPoller(DataSource dataSource, String origin, long retentionMillis) {
+		this.dataSource = dataSource;
+		this.origin = origin;
+		this.retentionMillis = retentionMillis;
+	}
+
+	// Called by the polling thread with the changes of the table, in the order of the log
+	public void addListener(String table, Consumer<List<ChangeLogEntry>> listener) {
+		listeners.computeIfAbsent(table, key -> new CopyOnWriteArrayList<>()).add(listener);
+	}
+
+	public void removeListener(String table, Consumer<List<ChangeLogEntry>> listener) {
+		List<Consumer<List<ChangeLogEntry>>> tableListeners = listeners.get(table);
+		if (tableListeners != null) {
+			tableListeners.remove(listener);
+		}
+	}
+
+	// Polls every intervalSeconds in a daemon thread
+	public synchronized void start(int intervalSeconds) {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "change-log-poller");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduler.scheduleWithFixedDelay(this::tryPoll, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	public synchronized void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	// An exception would stop the scheduled polls
+	private void tryPoll() {
+		try {
+			poll();
+		} catch (RuntimeException e) {
+			AppLog.warn("Change log", "poll failed: " + e.getMessage());
+		}
+	}
+
+	// Gives the number of changes of the other instances handed to the listeners. The first
+	// poll only finds where the log ends, the caches are loaded after it.
+	public synchronized int poll() {
+		List<ChangeLogEntry> changes = new ArrayList<>();
+
+		Connection conn = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+
+		try {
+			conn = dataSource.getConnection();
+			if (highestSequence < 0) {
+				ps = conn.prepareStatement(MAX_SEQ_SQL);
+				rs = ps.executeQuery();
+				rs.next();
+				highestSequence = rs.getLong(1);
+				return 0;
+			}
+
+			// The gaps found by the previous polls first, the ones that committed since
+			expireGaps();
+			List<Long> open = new ArrayList<>(gaps.keySet());
+			for (int from = 0; from < open.size(); from += GAPS_PER_QUERY) {
+				ps = conn.prepareStatement(GAPS_SQL);
+				for (int i = 0; i < GAPS_PER_QUERY; i++) {
+					int index = from + i;
+					ps.setLong(i + 1, index < open.size() ? open.get(index) : -1);
+				}
+				rs = ps.executeQuery();
+				while (rs.next()) {
+					gaps.remove(rs.getLong("Seq"));
+					addChange(changes, rs);
+				}
+				DB.closeResultSet(rs);
+				rs = null;
+				DB.closeStatement(ps);
+				ps = null;
+			}
+
+			ps = conn.prepareStatement(POLL_SQL);
+			ps.setLong(1, highestSequence);
+			ps.setInt(2, MAX_ROWS_PER_POLL);
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				long sequence = rs.getLong("Seq");
+				openGaps(sequence);
+				highestSequence = sequence;
+				addChange(changes, rs);
+			}
+			DB.closeResultSet(rs);
+			rs = null;
+			DB.closeStatement(ps);
+			ps = null;
+
+			if (retentionMillis > 0 && System.currentTimeMillis() - lastPurge > PURGE_INTERVAL_MILLIS) {
+				ps = conn.prepareStatement(PURGE_SQL);
+				ps.setTimestamp(1, new Timestamp(System.currentTimeMillis() - retentionMillis));
+				ps.executeUpdate();
+				lastPurge = System.currentTimeMillis();
+			}
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		} finally {
+			DB.closeResultSet(rs);
+			DB.closeStatement(ps);
+			DB.closeConnection(conn);
+		}
+
+		// A late sequence is older than the new ones
+		changes.sort(Comparator.comparingLong(ChangeLogEntry::getSequence));
+		dispatch(changes);
+		return changes.size();
+	}
+
+	private void addChange(List<ChangeLogEntry> changes, ResultSet rs) throws SQLException {
+		if (!origin.equals(rs.getString("Origin"))) {
+			changes.add(new ChangeLogEntry(rs.getLong("Seq"), rs.getString("TableName"), rs.getInt("RowId"),
+					ChangeLogEntry.Operation.fromCode(rs.getString("Operation"))));
+		}
+	}
+
+	// The sequences skipped between the highest one read and the new one
+	private void openGaps(long sequence) {
+		long now = System.currentTimeMillis();
+		for (long missing = Math.max(highestSequence + 1, sequence - MAX_OPEN_GAPS); missing < sequence; missing++) {
+			gaps.put(missing, now);
+		}
+		while (gaps.size() > MAX_OPEN_GAPS) {
+			gaps.pollFirstEntry();
+		}
+	}
+
+	private void expireGaps() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Long> since = gaps.values().iterator(); since.hasNext();) {
+			if (now - since.next() >= GAP_WAIT_MILLIS) {
+				since.remove();
+			}
+		}
+	}
+
+	private void dispatch(List<ChangeLogEntry> changes) {
+		Map<String, List<ChangeLogEntry>> byTable = new LinkedHashMap<>();
+		for (ChangeLogEntry change : changes) {
+			byTable.computeIfAbsent(change.getTable(), table -> new ArrayList<>()).add(change);
+		}
+		for (Map.Entry<String, List<ChangeLogEntry>> entry : byTable.entrySet()) {
+			for (Consumer<List<ChangeLogEntry>> listener : listeners.getOrDefault(entry.getKey(), List.of())) {
+				try {
+					listener.accept(entry.getValue());
+				} catch (RuntimeException e) {
+					AppLog.warn("Change log", "listener failed: " + e);
+				}
+			}
+		}
+	}
+}
@@ -5,82 +5,152 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
+import javax.sql.DataSource;
+
 import db.DB;
+import db.DbConflictException;
 import db.DbException;
+import model.dao.ChangeLogEntry;
 import model.dao.DepartmentDao;
 import model.entities.Department;
 
 public class DepartmentDaoJDBC implements DepartmentDao {
 
-	public DepartmentDaoJDBC(Connection conn) {
-		this.conn = conn;
+	private static final String INSERT_SQL =
+			  "INSERT INTO department "
+			+ "(Name) "
+			+ "VALUES "
+			+ "(?)";
+	// Compare and set: only the version that was read is updated, and it is incremented
+	private static final String UPDATE_SQL =
+			  "UPDATE department "
+			+ "SET Name = ?, Version = Version + 1 "
+			+ "WHERE Id = ? AND Version = ?";
+	private static final String DELETE_SQL =
+			  "DELETE FROM department "
+			+ "WHERE Id = ?";
+
+	private static final String FIND_BY_ID_SQL = "SELECT * FROM department WHERE Id = ?";
+
+	private static final String FIND_ALL_SQL = "SELECT * FROM department";
+
+	// Stateless, so the column plans are shared by all the DAO instances
+	private static final DepartmentRowMapper ROW_MAPPER = new DepartmentRowMapper();
+
+	// Prepared on the pool connections at startup
+	public static List<String> hotStatements() {
+		return Arrays.asList(FIND_ALL_SQL, FIND_BY_ID_SQL);
 	}
 
-	private Connection conn = null;
+	public DepartmentDaoJDBC(DataSource dataSource) {
+		this(dataSource, ChangeLog.DISABLED);
+	}
+
+	// The inserts, updates and deletes are logged by the change log in their own transaction
+	public DepartmentDaoJDBC(DataSource dataSource, ChangeLog changeLog) {
+		this.dataSource = dataSource;
+		this.changeLog = changeLog;
+		this.batch = new JdbcBatch(dataSource, DB.getInt(DB.getProperties(), "jdbc.batchSize", 500));
+	}
+
+	// Each operation borrows its own connection and gives it back in the finally block
+	private DataSource dataSource = null;
+
+	private JdbcBatch batch = null;
+
+	private ChangeLog changeLog;
 	
 	@Override
 	public void insert(Department department) {
+		Connection conn = null;
 		PreparedStatement ps = null;
+		ResultSet rs = null;
 		try {
-			ps = conn.prepareStatement(
-					  "INSERT INTO department "
-					+ "(Name) "
-					+ "VALUES "
-					+ "(?)", Statement.RETURN_GENERATED_KEYS);
+			conn = dataSource.getConnection();
+			changeLog.begin(conn);
+			ps = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
 			ps.setString(1, department.getName());
 			int result = ps.executeUpdate();
 			
 			if (result > 0) {
-				ResultSet rs = ps.getGeneratedKeys();
-				if (rs.next()) {
-					int id = rs.getInt(1);
-					department.setId(id);
+				rs = ps.getGeneratedKeys();
+				// Without the id the change log row can not be written, the transaction is rolled back
+				if (!rs.next()) {
+					throw new DbException("Error during the inserted. No id generated.");
 				}
-				DB.closeResultSet(rs);
+				int id = rs.getInt(1);
+				changeLog.commit(conn, ChangeLogEntry.DEPARTMENT, id, ChangeLogEntry.Operation.INSERT);
+				department.setId(id);
+				// The default of the column
+				department.setVersion(0);
 			} else {
 				throw new DbException("Error during the inserted.");
 			}
 		} catch (SQLException e) {
 			throw new DbException(e.getMessage());
 		} finally {
+			DB.closeResultSet(rs);
 			DB.closeStatement(ps);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
 	public void update(Department department) {
+		Connection conn = null;
 		PreparedStatement ps = null;
 		try {
-			ps = conn.prepareStatement(
-					  "UPDATE department "
-					+ "SET Name = ?"
-					+ "WHERE Id = ?");
+			conn = dataSource.getConnection();
+			changeLog.begin(conn);
+			ps = conn.prepareStatement(UPDATE_SQL);
 			
 			ps.setString(1, department.getName());
-			ps.setInt(2, department.getId());
+			bindIdAndVersion(ps, department);
 			
 			int result = ps.executeUpdate();
 			
-			if (result <= 0) {
-				throw new DbException("Error during the inserted.");
+			if (result > 0) {
+				changeLog.commit(conn, ChangeLogEntry.DEPARTMENT, department.getId(), ChangeLogEntry.Operation.UPDATE);
+				department.setVersion(department.getVersion() + 1);
+				return;
 			}
 		} catch (SQLException e) {
 			throw new DbException(e.getMessage());
 		} finally {
 			DB.closeStatement(ps);
+			DB.closeConnection(conn);
 		}
+		// Read after the connection is given back
+		throw conflict(department);
+	}
+
+	// The department was deleted or saved by someone else since it was read, or it was never read
+	private DbConflictException conflict(Department department) {
+		Department current = findById(department.getId());
+		String reason = current == null ? " was removed" : " was changed";
+		return new DbConflictException("Update not executed! The department " + department.getId() + reason
+				+ " by another user", current);
+	}
+
+	// A department without version never matches, the caller gets the current row to merge
+	private static void bindIdAndVersion(PreparedStatement ps, Department department) throws SQLException {
+		ps.setInt(2, department.getId());
+		ps.setObject(3, department.getVersion(), Types.INTEGER);
 	}
 
 	@Override
 	public void deleteById(Integer id) {
+		Connection conn = null;
 		PreparedStatement ps = null;
 		try {
-			ps = conn.prepareStatement(
-					  "DELETE FROM department "
-					+ "WHERE Id = ?");
+			conn = dataSource.getConnection();
+			changeLog.begin(conn);
+			ps = conn.prepareStatement(DELETE_SQL);
 			
 			ps.setInt(1, id);
 			
@@ -89,66 +159,81 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 			if (result <= 0) {
 				throw new DbException("Error during the inserted.");
 			}
+			changeLog.commit(conn, ChangeLogEntry.DEPARTMENT, id, ChangeLogEntry.Operation.DELETE);
 		} catch (SQLException e) {
 			throw new DbException(e.getMessage());
 		} finally {
 			DB.closeStatement(ps);
+			DB.closeConnection(conn);
 		}
 	}
 
+	@Override
+	public void insertAll(Collection<Department> departments) {
+		batch.execute(INSERT_SQL, departments, (ps, department) -> ps.setString(1, department.getName()),
+				(department, id) -> {
+					department.setId(id);
+					department.setVersion(0);
+				}, null, null,
+				changeLog.chunkWriter(ChangeLogEntry.DEPARTMENT, ChangeLogEntry.Operation.INSERT, Department::getId));
+	}
+
+	@Override
+	public void updateAll(Collection<Department> departments) {
+		batch.execute(UPDATE_SQL, departments, (ps, department) -> {
+			ps.setString(1, department.getName());
+			bindIdAndVersion(ps, department);
+		}, null, department -> department.setVersion(department.getVersion() + 1), this::conflict,
+				changeLog.chunkWriter(ChangeLogEntry.DEPARTMENT, ChangeLogEntry.Operation.UPDATE, Department::getId));
+	}
+
+	@Override
+	public void deleteByIds(Collection<Integer> ids) {
+		batch.execute(DELETE_SQL, ids, (ps, id) -> ps.setInt(1, id), null, null, null,
+				changeLog.chunkWriter(ChangeLogEntry.DEPARTMENT, ChangeLogEntry.Operation.DELETE, id -> id));
+	}
+
 	@Override
 	public Department findById(Integer id) {
+		Connection conn = null;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 		
 		try {
-			ps = conn.prepareStatement(
-					"SELECT * FROM department WHERE Id = ?");
+			conn = dataSource.getConnection();
+			ps = conn.prepareStatement(FIND_BY_ID_SQL);
 			
 			ps.setInt(1, id);
 			rs = ps.executeQuery();
 			
-			if (rs.next()) {
-				Department department = instantiateDepartment(rs);
-				return department;
-			}
-			
-			return null;
+			return ROW_MAPPER.mapFirst(FIND_BY_ID_SQL, rs);
 		} catch (SQLException e) {
 			throw new DbException(e.getMessage());
 		} finally {
 			DB.closeStatement(ps);
 			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
 	public List<Department> findAll() {
+		Connection conn = null;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 		
 		try {
-			ps = conn.prepareStatement("SELECT * FROM department");
+			conn = dataSource.getConnection();
+			ps = conn.prepareStatement(FIND_ALL_SQL);
 			rs = ps.executeQuery();
-			List<Department> departmentList = new ArrayList<Department>();
 			
-			while (rs.next()) {
-				departmentList.add(instantiateDepartment(rs));
-			}
-			
-			return departmentList;
+			return ROW_MAPPER.mapAll(FIND_ALL_SQL, rs);
 		} catch (SQLException e) {
 			throw new DbException(e.getMessage());
 		} finally {
 			DB.closeStatement(ps);
 			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
 		}
 	}
-
-	private Department instantiateDepartment(ResultSet rs) throws SQLException {
-		Department dep = new Department(
-				rs.getInt("Id"), 
-				rs.getString("Name"));
-		return dep;
-	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,24 @@
+package model.dao.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import model.entities.Department;
+
+class DepartmentRowMapper extends RowMapper<Department> {
+
+	private static final int ID = 0;
+	private static final int NAME = 1;
+	private static final int VERSION = 2;
+
+	DepartmentRowMapper() {
+		super("Id", "Name", "Version");
+	}
+
+	@Override
+	Department mapRow(ResultSet rs, int[] columns) throws SQLException {
+		Department department = new Department(rs.getInt(columns[ID]), rs.getString(columns[NAME]));
+		department.setVersion(rs.getInt(columns[VERSION]));
+		return department;
+	}
+}
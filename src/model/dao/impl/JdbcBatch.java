@@ -0,0 +1,183 @@
+package model.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import db.DB;
+import db.DbDuplicateKeyException;
+import db.DbException;
+
+// Runs one statement for many rows with addBatch/executeBatch. The rows are sent in chunks
+// of batchSize and every chunk is one transaction: when a chunk fails it is rolled back,
+// the chunks committed before it stay in the database and the error is thrown.
+class JdbcBatch {
+
+	// Builds the error of a row that the statement did not change, after the rollback
+	interface MissingRowHandler<T> {
+		RuntimeException missing(T item);
+	}
+
+	interface Binder<T> {
+		void bind(PreparedStatement ps, T item) throws SQLException;
+	}
+
+	interface KeyWriter<T> {
+		void write(T item, int generatedKey);
+	}
+
+	// Runs in the transaction of each chunk, before the commit. The keys are the generated
+	// keys of the rows, or null when the statement has no keyWriter.
+	interface ChunkWriter<T> {
+		void write(Connection conn, List<T> chunk, int[] keys) throws SQLException;
+	}
+
+	private final DataSource dataSource;
+	private final int batchSize;
+
+	JdbcBatch(DataSource dataSource, int batchSize) {
+		this.dataSource = dataSource;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	// The keyWriter receives the generated key of each row, it is null for updates and deletes
+	<T> void execute(String sql, Collection<T> items, Binder<T> binder, KeyWriter<T> keyWriter) {
+		execute(sql, items, binder, keyWriter, null, null, null);
+	}
+
+	// The committed callback receives each row once its chunk is committed, like the version
+	// increments of an update. A row that was not changed fails with the error of missingRow.
+	// The chunkWriter, when there is one, writes more rows in the transaction of each chunk.
+	<T> void execute(String sql, Collection<T> items, Binder<T> binder, KeyWriter<T> keyWriter,
+			Consumer<T> committed, MissingRowHandler<T> missingRow, ChunkWriter<T> chunkWriter) {
+		if (items.isEmpty()) {
+			return;
+		}
+
+		T missing = null;
+
+		Connection conn = null;
+		PreparedStatement ps = null;
+
+		try {
+			conn = dataSource.getConnection();
+			conn.setAutoCommit(false);
+			ps = keyWriter == null
+					? conn.prepareStatement(sql)
+					: conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+
+			List<T> chunk = new ArrayList<>(Math.min(batchSize, items.size()));
+			for (T item : items) {
+				binder.bind(ps, item);
+				ps.addBatch();
+				chunk.add(item);
+				if (chunk.size() == batchSize) {
+					executeChunk(conn, ps, chunk, keyWriter, committed, chunkWriter);
+					chunk.clear();
+				}
+			}
+			if (!chunk.isEmpty()) {
+				executeChunk(conn, ps, chunk, keyWriter, committed, chunkWriter);
+			}
+		} catch (MissingRowException e) {
+			rollback(conn);
+			if (missingRow == null) {
+				throw new DbException("Batch not executed! No rows effected for item " + e.item);
+			}
+			@SuppressWarnings("unchecked")
+			T item = (T) e.item;
+			missing = item;
+		} catch (SQLException e) {
+			rollback(conn);
+			if (DB.isDuplicateKey(e)) {
+				throw new DbDuplicateKeyException("Batch not executed! Duplicate key: " + e.getMessage(), e);
+			}
+			throw new DbException("Error during the batch command SQLState=" + e.getSQLState() + "\n Message error: " + e.getMessage(), e);
+		} catch (DbException e) {
+			rollback(conn);
+			throw e;
+		} finally {
+			DB.closeStatement(ps);
+			// The pool puts the connection back in autocommit mode
+			DB.closeConnection(conn);
+		}
+		// Out of the transaction, the handler can read the current row with another connection
+		if (missing != null) {
+			throw missingRow.missing(missing);
+		}
+	}
+
+	private <T> void executeChunk(Connection conn, PreparedStatement ps, List<T> chunk, KeyWriter<T> keyWriter,
+			Consumer<T> committed, ChunkWriter<T> chunkWriter) throws SQLException {
+		int[] affectedRows = ps.executeBatch();
+		for (int i = 0; i < affectedRows.length; i++) {
+			if (affectedRows[i] == 0 || affectedRows[i] == Statement.EXECUTE_FAILED) {
+				throw new MissingRowException(chunk.get(i));
+			}
+		}
+
+		int[] keys = null;
+		if (keyWriter != null) {
+			keys = new int[chunk.size()];
+			ResultSet rs = ps.getGeneratedKeys();
+			try {
+				for (int i = 0; i < keys.length; i++) {
+					if (!rs.next()) {
+						throw new DbException("Error during the insert command! Missing generated key");
+					}
+					keys[i] = rs.getInt(1);
+				}
+			} finally {
+				DB.closeResultSet(rs);
+			}
+		}
+
+		if (chunkWriter != null) {
+			chunkWriter.write(conn, chunk, keys);
+		}
+
+		conn.commit();
+
+		// The ids are only written after the commit, a rolled back chunk leaves the entities untouched
+		if (keys != null) {
+			for (int i = 0; i < keys.length; i++) {
+				keyWriter.write(chunk.get(i), keys[i]);
+			}
+		}
+		if (committed != null) {
+			for (T item : chunk) {
+				committed.accept(item);
+			}
+		}
+	}
+
+	private static class MissingRowException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Object item;
+
+		private MissingRowException(Object item) {
+			super(null, null, false, false);
+			this.item = item;
+		}
+	}
+
+	private static void rollback(Connection conn) {
+		if (conn != null) {
+			try {
+				conn.rollback();
+			} catch (SQLException e) {
+				// The connection is broken, the pool will discard it
+			}
+		}
+	}
+}
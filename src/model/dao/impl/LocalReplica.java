@@ -0,0 +1,547 @@
+package model.dao.impl;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sql.DataSource;
+
+import db.DB;
+import db.DbException;
+import log.AppLog;
+import model.dao.DepartmentCache;
+import model.dao.SellerSortKey;
+import model.entities.Department;
+import model.entities.Seller;
+
+// In-memory copy of the seller and department tables, saved to a snapshot file after the
+// syncs that changed it so the application starts and reads without the central database. The sync only reads
+// the rows with a LastModified at or after the last one seen (database/replica_sync.sql), and
+// the deleted rows are found by comparing the row counts. The writes still go to the central
+// database, where the Version column detects the conflicts, and then to this copy.
+// The copy keeps its own Seller objects: the sellers given to it are copied, so the callers
+// can keep changing theirs, and findSeller gives a copy, the one a form edits.
+public class LocalReplica {
+
+	// How long a read waits for the first load started by another thread
+	private static final long LOAD_WAIT_MILLIS = 30_000;
+
+	// A row can be committed a while after its LastModified was set, the sync reads again the
+	// rows of this window so a slow transaction is not missed
+	private static final long OVERLAP_MILLIS = 60_000;
+
+	private static final String DEPARTMENT_MARK_SQL = "SELECT MAX(LastModified) FROM department";
+	private static final String SELLER_MARK_SQL = "SELECT MAX(LastModified) FROM seller";
+	private static final String DEPARTMENT_CHANGES_SQL = "SELECT * FROM department WHERE LastModified >= ?";
+	private static final String SELLER_CHANGES_SQL =
+			"SELECT seller.*,department.Name as DepName FROM seller INNER JOIN department " +
+			"ON seller.DepartmentId = department.Id WHERE seller.LastModified >= ?";
+	private static final String DEPARTMENT_COUNT_SQL = "SELECT COUNT(*) FROM department";
+	private static final String SELLER_COUNT_SQL = "SELECT COUNT(*) FROM seller";
+	private static final String DEPARTMENT_IDS_SQL = "SELECT Id FROM department";
+	private static final String SELLER_IDS_SQL = "SELECT Id FROM seller";
+
+	private static final Comparator<String> TEXT = Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER);
+
+	// The order of the database for each sort key, the id breaks the ties
+	private static final Map<SellerSortKey, Comparator<Seller>> ORDERS = new EnumMap<>(SellerSortKey.class);
+
+	static {
+		ORDERS.put(SellerSortKey.ID, Comparator.comparing(Seller::getId));
+		ORDERS.put(SellerSortKey.NAME, Comparator.comparing(Seller::getName, TEXT).thenComparing(Seller::getId));
+		ORDERS.put(SellerSortKey.EMAIL, Comparator.comparing(Seller::getEmail, TEXT).thenComparing(Seller::getId));
+		ORDERS.put(SellerSortKey.BIRTH_DATE, Comparator.comparing(Seller::getBirthDate,
+				Comparator.nullsFirst(Comparator.<java.util.Date>naturalOrder())).thenComparing(Seller::getId));
+		ORDERS.put(SellerSortKey.BASE_SALARY, Comparator.comparing(Seller::getBaseSalary,
+				Comparator.nullsFirst(Comparator.<Double>naturalOrder())).thenComparing(Seller::getId));
+		ORDERS.put(SellerSortKey.DEPARTMENT, Comparator.comparing((Seller seller) -> seller.getDepartment().getName(),
+				TEXT).thenComparing(Seller::getId));
+	}
+
+	// What the snapshot file holds
+	private static class Snapshot implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		Timestamp departmentMark;
+		Timestamp sellerMark;
+		List<Department> departments;
+		List<Seller> sellers;
+	}
+
+	private final DataSource dataSource;
+	private final DepartmentCache departmentCache;
+	private final Path snapshotFile;
+	private final SellerRowMapper sellerMapper;
+	private final DepartmentRowMapper departmentMapper = new DepartmentRowMapper();
+	private ScheduledExecutorService scheduler;
+
+	// Guarded by this. The sorted arrays are built on demand and never modified, a change
+	// of the sellers drops them.
+	private final Map<Integer, Department> departments = new HashMap<>();
+	private final Map<Integer, Seller> sellers = new HashMap<>();
+	// Id of the seller of each email, in lower case like the collation of the database
+	private final Map<String, Integer> emails = new HashMap<>();
+	private final Map<SellerSortKey, Seller[]> sorted = new EnumMap<>(SellerSortKey.class);
+	private Timestamp departmentMark;
+	private Timestamp sellerMark;
+	private boolean loaded;
+	// The first load, run by the first read without holding the lock, the other reads wait for it
+	private CompletableFuture<Void> loading;
+	private boolean online = true;
+	// Changes not yet in the snapshot file, the writes of this application included
+	private boolean unsaved;
+
+	public LocalReplica(DataSource dataSource, DepartmentCache departmentCache, Path snapshotFile) {
+		this.dataSource = dataSource;
+		this.departmentCache = departmentCache;
+		this.snapshotFile = snapshotFile;
+		this.sellerMapper = new SellerRowMapper(departmentCache);
+		loadSnapshot();
+	}
+
+	// Syncs every intervalSeconds in a daemon thread
+	public synchronized void start(int intervalSeconds) {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "replica-sync");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduler.scheduleWithFixedDelay(this::trySync, 0, intervalSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	public synchronized void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	// False after a sync failed, the reads are served from the last copy
+	public synchronized boolean isOnline() {
+		return online;
+	}
+
+	// An exception would stop the scheduled syncs
+	private void trySync() {
+		try {
+			sync();
+		} catch (DbException e) {
+			// Already reported by sync
+		} catch (RuntimeException e) {
+			AppLog.warn("Replica", "sync failed: " + e);
+		}
+	}
+
+	// Reads the rows changed since the last sync in one transaction, so the marks, the rows
+	// and the counts are of the same moment. Gives the number of rows added, changed or removed.
+	public int sync() {
+		Timestamp newDepartmentMark;
+		Timestamp newSellerMark;
+		List<Department> changedDepartments;
+		List<Seller> changedSellers;
+		Set<Integer> departmentIds = null;
+		Set<Integer> sellerIds = null;
+		Timestamp lastDepartmentMark;
+		Timestamp lastSellerMark;
+		synchronized (this) {
+			lastDepartmentMark = departmentMark;
+			lastSellerMark = sellerMark;
+		}
+
+		Connection conn = null;
+		try {
+			conn = dataSource.getConnection();
+			conn.setAutoCommit(false);
+
+			newDepartmentMark = queryMark(conn, DEPARTMENT_MARK_SQL);
+			newSellerMark = queryMark(conn, SELLER_MARK_SQL);
+			changedDepartments = queryChanges(conn, DEPARTMENT_CHANGES_SQL, lastDepartmentMark, departmentMapper);
+			changedSellers = queryChanges(conn, SELLER_CHANGES_SQL, lastSellerMark, sellerMapper);
+
+			// After the changes the copy has every row of the database, it only has more
+			// rows when some were deleted
+			if (countAfter(changedDepartments, departments) > queryCount(conn, DEPARTMENT_COUNT_SQL)) {
+				departmentIds = queryIds(conn, DEPARTMENT_IDS_SQL);
+			}
+			if (countAfter(changedSellers, sellers) > queryCount(conn, SELLER_COUNT_SQL)) {
+				sellerIds = queryIds(conn, SELLER_IDS_SQL);
+			}
+			conn.commit();
+		} catch (SQLException | DbException e) {
+			setOnline(false, e.getMessage());
+			throw new DbException(e.getMessage());
+		} finally {
+			DB.closeConnection(conn);
+		}
+		setOnline(true, null);
+
+		int changes = apply(newDepartmentMark, newSellerMark, changedDepartments, changedSellers, departmentIds,
+				sellerIds);
+		saveSnapshot();
+		return changes;
+	}
+
+	private synchronized void setOnline(boolean online, String error) {
+		if (this.online != online) {
+			if (online) {
+				AppLog.info("Replica", "central database reachable again");
+			} else {
+				AppLog.warn("Replica", "central database unreachable, reading the local copy: " + error);
+			}
+		}
+		this.online = online;
+	}
+
+	private synchronized int countAfter(List<?> changed, Map<Integer, ?> rows) {
+		int count = rows.size();
+		for (Object row : changed) {
+			Integer id = row instanceof Seller ? ((Seller) row).getId() : ((Department) row).getId();
+			if (!rows.containsKey(id)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private synchronized int apply(Timestamp newDepartmentMark, Timestamp newSellerMark,
+			List<Department> changedDepartments, List<Seller> changedSellers, Set<Integer> departmentIds,
+			Set<Integer> sellerIds) {
+		int departmentChanges = 0;
+		for (Department department : changedDepartments) {
+			if (putDepartmentRow(department)) {
+				departmentChanges++;
+			}
+		}
+		if (departmentIds != null && departments.keySet().retainAll(departmentIds)) {
+			departmentChanges++;
+		}
+		if (departmentChanges > 0) {
+			departmentCache.invalidate();
+			unsaved = true;
+		}
+		int changes = departmentChanges;
+		for (Seller seller : changedSellers) {
+			if (putSellerRow(seller)) {
+				changes++;
+			}
+		}
+		if (sellerIds != null && sellers.keySet().retainAll(sellerIds)) {
+			emails.values().retainAll(sellerIds);
+			sorted.clear();
+			unsaved = true;
+			changes++;
+		}
+		if (newDepartmentMark != null) {
+			departmentMark = newDepartmentMark;
+		}
+		if (newSellerMark != null) {
+			sellerMark = newSellerMark;
+		}
+		loaded = true;
+		return changes;
+	}
+
+	// The reads sync first when the copy was never loaded, they fail only when there is no copy.
+	// The sync runs without the lock, so the writes and the syncs of the scheduler are not
+	// blocked by the database, and the reads arriving meanwhile wait for the same sync.
+	private void ensureLoaded() {
+		CompletableFuture<Void> load;
+		boolean first = false;
+		synchronized (this) {
+			if (loaded) {
+				return;
+			}
+			if (loading == null) {
+				loading = new CompletableFuture<>();
+				first = true;
+			}
+			load = loading;
+		}
+		if (first) {
+			try {
+				sync();
+				load.complete(null);
+			} catch (RuntimeException e) {
+				load.completeExceptionally(e);
+				throw e;
+			} finally {
+				synchronized (this) {
+					// After a failure the next read tries again
+					loading = null;
+				}
+			}
+			return;
+		}
+		try {
+			load.get(LOAD_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof DbException ? (DbException) e.getCause()
+					: new DbException(e.getCause().getMessage());
+		} catch (TimeoutException e) {
+			throw new DbException("Replica: the first load took more than " + LOAD_WAIT_MILLIS + " ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Replica: interrupted waiting for the first load");
+		}
+	}
+
+	public Department findDepartment(Integer id) {
+		ensureLoaded();
+		synchronized (this) {
+			return departments.get(id);
+		}
+	}
+
+	public List<Department> findAllDepartments() {
+		ensureLoaded();
+		List<Department> list;
+		synchronized (this) {
+			list = new ArrayList<>(departments.values());
+		}
+		list.sort(Comparator.comparing(Department::getId));
+		return list;
+	}
+
+	public Seller findSeller(Integer id) {
+		ensureLoaded();
+		synchronized (this) {
+			Seller seller = sellers.get(id);
+			return seller == null ? null : new Seller(seller);
+		}
+	}
+
+	// Whether another seller than excludingId has the email, ignoring the case
+	public boolean isEmailUsed(String email, Integer excludingId) {
+		if (email == null) {
+			return false;
+		}
+		ensureLoaded();
+		synchronized (this) {
+			Integer id = emails.get(emailKey(email));
+			return id != null && !id.equals(excludingId);
+		}
+	}
+
+	// All the sellers in the order of the key, ascending. The array is shared, it must not be changed.
+	public Seller[] sortedSellers(SellerSortKey key) {
+		ensureLoaded();
+		synchronized (this) {
+			Seller[] rows = sorted.get(key);
+			if (rows == null) {
+				rows = sellers.values().toArray(new Seller[0]);
+				Arrays.sort(rows, ORDERS.get(key));
+				sorted.put(key, rows);
+			}
+			return rows;
+		}
+	}
+
+	public static Comparator<Seller> order(SellerSortKey key) {
+		return ORDERS.get(key);
+	}
+
+	// Called after a write of the central database committed
+	public synchronized void putDepartment(Department department) {
+		if (putDepartmentRow(department)) {
+			departmentCache.invalidate();
+		}
+	}
+
+	public synchronized void removeDepartment(Integer id) {
+		if (departments.remove(id) != null) {
+			departmentCache.invalidate();
+			unsaved = true;
+		}
+	}
+
+	public synchronized void putSeller(Seller seller) {
+		putSellerRow(seller);
+	}
+
+	public synchronized void removeSeller(Integer id) {
+		Seller removed = sellers.remove(id);
+		if (removed != null) {
+			forgetEmail(removed);
+			sorted.clear();
+			unsaved = true;
+		}
+	}
+
+	// A row is only replaced by a newer version. The sync reads again the rows of the overlap,
+	// and a row read before a write of this application is older than the copy.
+	private boolean putDepartmentRow(Department department) {
+		Department current = departments.get(department.getId());
+		if (current != null && !isNewer(department.getVersion(), current.getVersion())) {
+			return false;
+		}
+		departments.put(department.getId(), department);
+		unsaved = true;
+		if (current != null && !department.getName().equals(current.getName())) {
+			// The sellers of the department get a copy with the new name, the old objects may be on screen
+			for (Seller seller : new ArrayList<>(sellers.values())) {
+				if (seller.getDepartment().getId().equals(department.getId())) {
+					Seller copy = new Seller(seller.getId(), seller.getName(), seller.getEmail(),
+							seller.getBirthDate(), seller.getBaseSalary(), department);
+					copy.setVersion(seller.getVersion());
+					sellers.put(copy.getId(), copy);
+				}
+			}
+			sorted.clear();
+		}
+		return true;
+	}
+
+	private boolean putSellerRow(Seller seller) {
+		Seller current = sellers.get(seller.getId());
+		if (current != null && !isNewer(seller.getVersion(), current.getVersion())) {
+			return false;
+		}
+		// A copy, the caller keeps changing its object. It points to the department of the copy.
+		Seller row = new Seller(seller);
+		Department department = departments.get(seller.getDepartment().getId());
+		if (department != null) {
+			row.setDepartment(department);
+		}
+		if (current != null) {
+			forgetEmail(current);
+		}
+		sellers.put(row.getId(), row);
+		indexEmail(row);
+		sorted.clear();
+		unsaved = true;
+		return true;
+	}
+
+	private void indexEmail(Seller seller) {
+		if (seller.getEmail() != null) {
+			emails.put(emailKey(seller.getEmail()), seller.getId());
+		}
+	}
+
+	// Only when the email still points to the seller, another one may have taken it since
+	private void forgetEmail(Seller seller) {
+		if (seller.getEmail() != null) {
+			emails.remove(emailKey(seller.getEmail()), seller.getId());
+		}
+	}
+
+	private static String emailKey(String email) {
+		return email.toLowerCase(Locale.ROOT);
+	}
+
+	private static boolean isNewer(Integer version, Integer current) {
+		return version == null || current == null || version > current;
+	}
+
+	private static Timestamp queryMark(Connection conn, String sql) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+			rs.next();
+			return rs.getTimestamp(1);
+		}
+	}
+
+	private static int queryCount(Connection conn, String sql) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+
+	private static Set<Integer> queryIds(Connection conn, String sql) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+			Set<Integer> ids = new HashSet<>();
+			while (rs.next()) {
+				ids.add(rs.getInt(1));
+			}
+			return ids;
+		}
+	}
+
+	private static <T> List<T> queryChanges(Connection conn, String sql, Timestamp mark, RowMapper<T> mapper)
+			throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.setTimestamp(1, new Timestamp(mark == null ? 0 : mark.getTime() - OVERLAP_MILLIS));
+			try (ResultSet rs = ps.executeQuery()) {
+				return mapper.mapAll(sql, rs);
+			}
+		}
+	}
+
+	private synchronized void loadSnapshot() {
+		if (!Files.exists(snapshotFile)) {
+			return;
+		}
+		try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(snapshotFile))) {
+			Snapshot snapshot = (Snapshot) in.readObject();
+			for (Department department : snapshot.departments) {
+				departments.put(department.getId(), department);
+			}
+			for (Seller seller : snapshot.sellers) {
+				sellers.put(seller.getId(), seller);
+				indexEmail(seller);
+			}
+			departmentMark = snapshot.departmentMark;
+			sellerMark = snapshot.sellerMark;
+			loaded = true;
+		} catch (IOException | ClassNotFoundException | ClassCastException e) {
+			// A damaged snapshot is ignored, the first read loads everything again
+			AppLog.warn("Replica", "snapshot not loaded: " + e.getMessage());
+			departments.clear();
+			sellers.clear();
+			emails.clear();
+		}
+	}
+
+	// Written to another file first, a crash never leaves half a snapshot. A snapshot that can
+	// not be written only costs a full load at the next start.
+	private void saveSnapshot() {
+		Snapshot snapshot = new Snapshot();
+		synchronized (this) {
+			if (!unsaved) {
+				return;
+			}
+			unsaved = false;
+			snapshot.departmentMark = departmentMark;
+			snapshot.sellerMark = sellerMark;
+			snapshot.departments = new ArrayList<>(departments.values());
+			snapshot.sellers = new ArrayList<>(sellers.values());
+		}
+		Path partFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".part");
+		try {
+			try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(partFile))) {
+				out.writeObject(snapshot);
+			}
+			Files.move(partFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			AppLog.warn("Replica", "snapshot not saved: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package model.dao.impl;
+
+import java.util.Collection;
+import java.util.List;
+
+import model.dao.DepartmentDao;
+import model.entities.Department;
+
+// Reads the departments from the local replica, the writes go to the central database first
+public class ReplicaDepartmentDao implements DepartmentDao {
+
+	private final DepartmentDao delegate;
+	private final LocalReplica replica;
+
+	public ReplicaDepartmentDao(DepartmentDao delegate, LocalReplica replica) {
+		this.delegate = delegate;
+		this.replica = replica;
+	}
+
+	@Override
+	public void insert(Department department) {
+		delegate.insert(department);
+		replica.putDepartment(department);
+	}
+
+	@Override
+	public void update(Department department) {
+		delegate.update(department);
+		replica.putDepartment(department);
+	}
+
+	@Override
+	public void deleteById(Integer id) {
+		delegate.deleteById(id);
+		replica.removeDepartment(id);
+	}
+
+	@Override
+	public void insertAll(Collection<Department> departments) {
+		delegate.insertAll(departments);
+		departments.forEach(replica::putDepartment);
+	}
+
+	@Override
+	public void updateAll(Collection<Department> departments) {
+		delegate.updateAll(departments);
+		departments.forEach(replica::putDepartment);
+	}
+
+	@Override
+	public void deleteByIds(Collection<Integer> ids) {
+		delegate.deleteByIds(ids);
+		ids.forEach(replica::removeDepartment);
+	}
+
+	@Override
+	public Department findById(Integer id) {
+		return replica.findDepartment(id);
+	}
+
+	@Override
+	public List<Department> findAll() {
+		return replica.findAllDepartments();
+	}
+}
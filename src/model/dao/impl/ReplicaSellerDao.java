@@ -0,0 +1,253 @@
+package model.dao.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import model.dao.Page;
+import model.dao.PageRequest;
+import model.dao.RowCallback;
+import model.dao.SellerDao;
+import model.dao.SellerSearchCriteria;
+import model.dao.SellerSortKey;
+import model.entities.Department;
+import model.entities.SalaryStatistics;
+import model.entities.Seller;
+
+// Decorator that answers every read from the local replica, with the filters, the order and
+// the keyset pages of the SQL of SellerDaoJDBC. The writes go to the central database first,
+// a conflict or a missing connection fails them there, and then they are applied to the replica.
+public class ReplicaSellerDao implements SellerDao {
+
+	private final SellerDao delegate;
+	private final LocalReplica replica;
+
+	public ReplicaSellerDao(SellerDao delegate, LocalReplica replica) {
+		this.delegate = delegate;
+		this.replica = replica;
+	}
+
+	@Override
+	public void insert(Seller seller) {
+		delegate.insert(seller);
+		replica.putSeller(seller);
+	}
+
+	@Override
+	public void update(Seller seller) {
+		delegate.update(seller);
+		replica.putSeller(seller);
+	}
+
+	@Override
+	public void deleteById(Integer id) {
+		delegate.deleteById(id);
+		replica.removeSeller(id);
+	}
+
+	// When a batch fails the committed chunks reach the replica with the next sync
+	@Override
+	public void insertAll(Collection<Seller> sellers) {
+		delegate.insertAll(sellers);
+		sellers.forEach(replica::putSeller);
+	}
+
+	@Override
+	public void updateAll(Collection<Seller> sellers) {
+		delegate.updateAll(sellers);
+		sellers.forEach(replica::putSeller);
+	}
+
+	@Override
+	public void deleteByIds(Collection<Integer> ids) {
+		delegate.deleteByIds(ids);
+		ids.forEach(replica::removeSeller);
+	}
+
+	@Override
+	public Seller findById(Integer id) {
+		return replica.findSeller(id);
+	}
+
+	@Override
+	public List<Seller> findAll() {
+		return new ArrayList<>(Arrays.asList(replica.sortedSellers(SellerSortKey.ID)));
+	}
+
+	@Override
+	public List<Seller> findAllByDepartment(Department department) {
+		List<Seller> list = new ArrayList<>();
+		for (Seller seller : replica.sortedSellers(SellerSortKey.NAME)) {
+			if (seller.getDepartment().getId().equals(department.getId())) {
+				list.add(seller);
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public Page<Seller> findPage(PageRequest<Seller> request) {
+		return search(new SellerSearchCriteria(), request);
+	}
+
+	@Override
+	public int count() {
+		return replica.sortedSellers(SellerSortKey.ID).length;
+	}
+
+	// The anchor is found by a binary search in the rows sorted by (key, id), then the rows are
+	// scanned in the direction of the page until it is full
+	@Override
+	public Page<Seller> search(SellerSearchCriteria criteria, PageRequest<Seller> request) {
+		Seller[] rows = replica.sortedSellers(criteria.getSortKey());
+		Comparator<Seller> order = LocalReplica.order(criteria.getSortKey());
+
+		boolean backwards = request.getDirection() == PageRequest.Direction.BEFORE;
+		int step = criteria.isAscending() != backwards ? 1 : -1;
+
+		int index;
+		if (request.getAnchor() == null) {
+			index = step > 0 ? 0 : rows.length - 1;
+			// Without filters the offset is a position in the array
+			if (criteria.isEmpty()) {
+				index += step * request.getOffset();
+			} else {
+				for (int skipped = 0; skipped < request.getOffset() && index >= 0 && index < rows.length; index += step) {
+					if (matches(criteria, rows[index])) {
+						skipped++;
+					}
+				}
+			}
+		} else {
+			int found = Arrays.binarySearch(rows, request.getAnchor(), order);
+			if (found >= 0) {
+				index = found + step;
+			} else {
+				index = step > 0 ? -found - 1 : -found - 2;
+			}
+		}
+
+		// One extra row tells if there is another page
+		List<Seller> sellerList = new ArrayList<>();
+		for (; index >= 0 && index < rows.length && sellerList.size() <= request.getSize(); index += step) {
+			if (matches(criteria, rows[index])) {
+				sellerList.add(rows[index]);
+			}
+		}
+		boolean hasMore = sellerList.size() > request.getSize();
+		if (hasMore) {
+			sellerList.remove(sellerList.size() - 1);
+		}
+		if (backwards) {
+			Collections.reverse(sellerList);
+			return new Page<>(sellerList, request.getSize(), true, hasMore);
+		}
+		return new Page<>(sellerList, request.getSize(), hasMore,
+				request.getDirection() == PageRequest.Direction.AFTER || request.getOffset() > 0);
+	}
+
+	@Override
+	public int count(SellerSearchCriteria criteria) {
+		if (criteria.isEmpty()) {
+			return count();
+		}
+		int count = 0;
+		for (Seller seller : replica.sortedSellers(SellerSortKey.ID)) {
+			if (matches(criteria, seller)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// LIKE 'prefix%' of the case insensitive collation of the database
+	private static boolean matches(SellerSearchCriteria criteria, Seller seller) {
+		return startsWith(seller.getName(), criteria.getNamePrefix())
+				&& startsWith(seller.getEmail(), criteria.getEmailPrefix())
+				&& (criteria.getDepartmentId() == null
+						|| criteria.getDepartmentId().equals(seller.getDepartment().getId()))
+				&& (criteria.getMinSalary() == null || seller.getBaseSalary() >= criteria.getMinSalary())
+				&& (criteria.getMaxSalary() == null || seller.getBaseSalary() <= criteria.getMaxSalary());
+	}
+
+	private static boolean startsWith(String text, String prefix) {
+		if (prefix == null || prefix.isEmpty()) {
+			return true;
+		}
+		return text != null && text.regionMatches(true, 0, prefix, 0, prefix.length());
+	}
+
+	@Override
+	public boolean existsByEmail(String email, Integer excludingId) {
+		return replica.isEmailUsed(email, excludingId);
+	}
+
+	@Override
+	public void streamAll(RowCallback<Seller> callback) {
+		for (Seller seller : replica.sortedSellers(SellerSortKey.ID)) {
+			if (!callback.accept(seller)) {
+				break;
+			}
+		}
+	}
+
+	@Override
+	public List<SalaryStatistics> salaryStatisticsByDepartment() {
+		// In the order of the department names, like the SQL
+		Map<Integer, List<Seller>> groups = new LinkedHashMap<>();
+		for (Seller seller : replica.sortedSellers(SellerSortKey.DEPARTMENT)) {
+			groups.computeIfAbsent(seller.getDepartment().getId(), id -> new ArrayList<>()).add(seller);
+		}
+		List<SalaryStatistics> list = new ArrayList<>();
+		for (List<Seller> group : groups.values()) {
+			Department department = group.get(0).getDepartment();
+			list.add(statistics(department.getId(), department.getName(), group));
+		}
+		return list;
+	}
+
+	@Override
+	public List<SalaryStatistics> salaryStatisticsByBirthYear(int yearsPerGroup) {
+		Map<Integer, List<Seller>> groups = new TreeMap<>();
+		Calendar calendar = Calendar.getInstance();
+		for (Seller seller : replica.sortedSellers(SellerSortKey.ID)) {
+			if (seller.getBirthDate() != null) {
+				calendar.setTime(seller.getBirthDate());
+				int firstYear = Math.floorDiv(calendar.get(Calendar.YEAR), yearsPerGroup) * yearsPerGroup;
+				groups.computeIfAbsent(firstYear, year -> new ArrayList<>()).add(seller);
+			}
+		}
+		List<SalaryStatistics> list = new ArrayList<>();
+		for (Map.Entry<Integer, List<Seller>> group : groups.entrySet()) {
+			int firstYear = group.getKey();
+			String name = yearsPerGroup == 1
+					? String.valueOf(firstYear)
+					: firstYear + "-" + (firstYear + yearsPerGroup - 1);
+			list.add(statistics(firstYear, name, group.getValue()));
+		}
+		return list;
+	}
+
+	// The nearest-rank percentiles of the SQL: the smallest salary with rank >= p * size
+	private static SalaryStatistics statistics(int groupId, String groupName, List<Seller> group) {
+		double[] salaries = group.stream().mapToDouble(Seller::getBaseSalary).sorted().toArray();
+		int size = salaries.length;
+		double payroll = 0;
+		for (double salary : salaries) {
+			payroll += salary;
+		}
+		return new SalaryStatistics(groupId, groupName, size, payroll, payroll / size, salaries[0],
+				salaries[size - 1], salaries[rank(50, size)], salaries[rank(90, size)]);
+	}
+
+	private static int rank(int percent, int size) {
+		return Math.max(0, (percent * size + 99) / 100 - 1);
+	}
+}
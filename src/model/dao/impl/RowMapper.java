@@ -0,0 +1,64 @@
+package model.dao.impl;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Maps the rows of a ResultSet to entities reading the columns by index. The index of each
+// label the mapper needs is looked up once in the ResultSetMetaData of the first result of
+// a SQL text, and that plan is reused for the next executions of the same SQL.
+abstract class RowMapper<T> {
+
+	private final String[] labels;
+	private final ConcurrentMap<String, int[]> plans = new ConcurrentHashMap<>();
+
+	protected RowMapper(String... labels) {
+		this.labels = labels;
+	}
+
+	// Column indexes in the order of the labels given to the constructor
+	int[] columns(String sql, ResultSet rs) throws SQLException {
+		int[] columns = plans.get(sql);
+		if (columns == null) {
+			columns = resolve(rs.getMetaData());
+			plans.putIfAbsent(sql, columns);
+		}
+		return columns;
+	}
+
+	abstract T mapRow(ResultSet rs, int[] columns) throws SQLException;
+
+	List<T> mapAll(String sql, ResultSet rs) throws SQLException {
+		int[] columns = columns(sql, rs);
+		List<T> list = new ArrayList<>();
+		while (rs.next()) {
+			list.add(mapRow(rs, columns));
+		}
+		return list;
+	}
+
+	// The first row or null when the result is empty
+	T mapFirst(String sql, ResultSet rs) throws SQLException {
+		return rs.next() ? mapRow(rs, columns(sql, rs)) : null;
+	}
+
+	private int[] resolve(ResultSetMetaData meta) throws SQLException {
+		int count = meta.getColumnCount();
+		int[] columns = new int[labels.length];
+		for (int i = 0; i < labels.length; i++) {
+			for (int column = 1; column <= count && columns[i] == 0; column++) {
+				if (labels[i].equalsIgnoreCase(meta.getColumnLabel(column))) {
+					columns[i] = column;
+				}
+			}
+			if (columns[i] == 0) {
+				throw new SQLException("Column not found: " + labels[i]);
+			}
+		}
+		return columns;
+	}
+}
@@ -5,101 +5,197 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.sql.DataSource;
+
 import db.DB;
+import db.DbConflictException;
+import db.DbDuplicateKeyException;
 import db.DbException;
+import model.dao.ChangeLogEntry;
+import model.dao.DepartmentCache;
+import model.dao.Page;
+import model.dao.PageRequest;
+import model.dao.RowCallback;
 import model.dao.SellerDao;
+import model.dao.SellerSearchCriteria;
+import model.dao.SellerSortKey;
 import model.entities.Department;
+import model.entities.SalaryStatistics;
 import model.entities.Seller;
 
 public class SellerDaoJDBC implements SellerDao {
 
-	public SellerDaoJDBC(Connection conn) {
-		this.conn = conn;
+	private static final String INSERT_SQL =
+			"INSERT INTO seller (Name, Email, BirthDate, BaseSalary, DepartmentId) " + 
+			"VALUES	(?, ?, ?, ?, ?)";
+	// Compare and set: only the version that was read is updated, and it is incremented
+	private static final String UPDATE_SQL =
+			"UPDATE seller " +
+			"SET Name = ?, Email = ?, BirthDate = ?, BaseSalary = ?, DepartmentId = ?, Version = Version + 1 " +
+			"WHERE Id = ? AND Version = ? ";
+	private static final String SELECT_SQL =
+			"SELECT seller.*,department.Name as DepName FROM seller INNER JOIN department " +
+			"ON seller.DepartmentId = department.Id ";
+
+	private static final String FIND_BY_ID_SQL = SELECT_SQL + "WHERE seller.Id = ?";
+
+	private static final String FIND_ALL_SQL = SELECT_SQL + "ORDER BY Id";
+
+	private static final String FIND_BY_DEPARTMENT_SQL = SELECT_SQL + "WHERE DepartmentId = ? ORDER BY Name ";
+
+	private static final String STREAM_ALL_SQL = SELECT_SQL + "ORDER BY seller.Id";
+
+	// Answered by idx_seller_email, the ids start at 1 so 0 excludes no seller
+	private static final String EXISTS_BY_EMAIL_SQL = "SELECT 1 FROM seller WHERE Email = ? AND Id <> ? LIMIT 1";
+
+	private static final String DELETE_SQL =
+			"DELETE FROM seller " +
+			"WHERE Id = ? ";
+
+	// Aggregates of the salaries of each group. The subquery "s" numbers the salaries inside
+	// their group (RowNumber, ordered by salary) and counts the group (GroupSize), so the
+	// nearest-rank percentile p is the smallest salary with RowNumber >= p * GroupSize.
+	private static final String STATISTICS_COLUMNS =
+			"COUNT(*) AS Headcount, SUM(s.BaseSalary) AS Payroll, AVG(s.BaseSalary) AS Average, " +
+			"MIN(s.BaseSalary) AS Minimum, MAX(s.BaseSalary) AS Maximum, " +
+			"MIN(CASE WHEN s.RowNumber >= 0.5 * s.GroupSize THEN s.BaseSalary END) AS Median, " +
+			"MIN(CASE WHEN s.RowNumber >= 0.9 * s.GroupSize THEN s.BaseSalary END) AS Percentile90 ";
+
+	public SellerDaoJDBC(DataSource dataSource, DepartmentCache departmentCache) {
+		this(dataSource, departmentCache, ChangeLog.DISABLED);
+	}
+
+	// The inserts, updates and deletes are logged by the change log in their own transaction
+	public SellerDaoJDBC(DataSource dataSource, DepartmentCache departmentCache, ChangeLog changeLog) {
+		this.dataSource = dataSource;
+		this.changeLog = changeLog;
+		this.rowMapper = new SellerRowMapper(departmentCache);
+		this.batch = new JdbcBatch(dataSource, DB.getInt(DB.getProperties(), "jdbc.batchSize", 500));
+		// Integer.MIN_VALUE makes the MySQL driver stream the rows one by one
+		this.streamFetchSize = DB.getInt(DB.getProperties(), "jdbc.streamFetchSize", Integer.MIN_VALUE);
 	}
 
-	private Connection conn = null;
+	// Each operation borrows its own connection and gives it back in the finally block
+	private DataSource dataSource = null;
+
+	private SellerRowMapper rowMapper = null;
+
+	private JdbcBatch batch = null;
+
+	private ChangeLog changeLog;
+
+	private int streamFetchSize;
 
 	@Override
 	public void insert(Seller seller) {
 		
+		Connection conn = null;
 		PreparedStatement ps = null;
+		ResultSet rs = null;
 
 		try {
-			ps = conn.prepareStatement(
-					"INSERT INTO seller (Name, Email, BirthDate, BaseSalary, DepartmentId) " + 
-					"VALUES	(?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+			conn = dataSource.getConnection();
+			changeLog.begin(conn);
+			ps = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
 			
-			ps.setString(1, seller.getName());
-			ps.setString(2, seller.getEmail());
-			ps.setDate(3, new java.sql.Date(seller.getBirthDate().getTime()));
-			ps.setDouble(4, seller.getBaseSalary());
-			ps.setInt(5, seller.getDepartment().getId());
+			bindSeller(ps, seller);
 			
 			int affectedRows = ps.executeUpdate();
 			
 			if(affectedRows > 0) {
-				ResultSet rs = ps.getGeneratedKeys();
-				if (rs.next()) {
-					int id = rs.getInt(1);
-					seller.setId(id);
+				rs = ps.getGeneratedKeys();
+				// Without the id the change log row can not be written, the transaction is rolled back
+				if (!rs.next()) {
+					throw new DbException("Error during the insert command! No id generated!");
 				}
-				DB.closeResultSet(rs);
+				int id = rs.getInt(1);
+				changeLog.commit(conn, ChangeLogEntry.SELLER, id, ChangeLogEntry.Operation.INSERT);
+				seller.setId(id);
+				// The default of the column
+				seller.setVersion(0);
 			} else {
 				throw new DbException("Error during the insert command! No rows effected!");
 			}
 			
 		} catch (SQLException e) {
-			throw new DbException("Error during the insert command SQLState=" + e.getSQLState() + "\n Message error: " + e.getMessage());
+			if (DB.isDuplicateKey(e)) {
+				throw new DbDuplicateKeyException("Insert not executed! Duplicate key: " + e.getMessage(), e);
+			}
+			throw new DbException("Error during the insert command SQLState=" + e.getSQLState() + "\n Message error: " + e.getMessage(), e);
 		} finally {
+			DB.closeResultSet(rs);
 			DB.closeStatement(ps);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
 	public void update(Seller seller) {
 
+		Connection conn = null;
 		PreparedStatement ps = null;
 		
 		try {
-			ps = conn.prepareStatement(
-					"UPDATE seller " +
-					"SET Name = ?, Email = ?, BirthDate = ?, BaseSalary = ?, DepartmentId = ? " +
-					"WHERE Id = ? ");
+			conn = dataSource.getConnection();
+			changeLog.begin(conn);
+			ps = conn.prepareStatement(UPDATE_SQL);
 			
-			ps.setString(1, seller.getName());
-			ps.setString(2, seller.getEmail());
-			ps.setDate(3, new java.sql.Date(seller.getBirthDate().getTime()));
-			ps.setDouble(4, seller.getBaseSalary());
-			ps.setInt(5, seller.getDepartment().getId());
-			ps.setInt(6, seller.getId());
+			bindSeller(ps, seller);
+			bindIdAndVersion(ps, seller);
 			
 			int affectedRows = ps.executeUpdate();
 			
-			if (affectedRows == 0) {
-				throw new DbException("Update not executed! The ID does not exists!");
+			if (affectedRows > 0) {
+				changeLog.commit(conn, ChangeLogEntry.SELLER, seller.getId(), ChangeLogEntry.Operation.UPDATE);
+				seller.setVersion(seller.getVersion() + 1);
+				return;
 			}
-			
 		} catch (SQLException e) {
-			throw new DbException("Error during the update command SQLState=" + e.getSQLState() + "\n Message error: " + e.getMessage());
+			if (DB.isDuplicateKey(e)) {
+				throw new DbDuplicateKeyException("Update not executed! Duplicate key: " + e.getMessage(), e);
+			}
+			throw new DbException("Error during the update command SQLState=" + e.getSQLState() + "\n Message error: " + e.getMessage(), e);
 		} finally {
 			DB.closeStatement(ps);
+			DB.closeConnection(conn);
 		}
+		// Read after the connection is given back
+		throw conflict(seller);
+	}
+
+	// The seller was deleted or saved by someone else since it was read, or it was never read
+	private DbConflictException conflict(Seller seller) {
+		Seller current = findById(seller.getId());
+		String reason = current == null ? " was removed" : " was changed";
+		return new DbConflictException("Update not executed! The seller " + seller.getId() + reason
+				+ " by another user", current);
+	}
+
+	// A seller without version never matches, the caller gets the current row to merge
+	private static void bindIdAndVersion(PreparedStatement ps, Seller seller) throws SQLException {
+		ps.setInt(6, seller.getId());
+		ps.setObject(7, seller.getVersion(), Types.INTEGER);
 	}
 
 	@Override
 	public void deleteById(Integer id) {
 
+		Connection conn = null;
 		PreparedStatement ps = null;
 		
 		try {
-			ps = conn.prepareStatement(
-					"DELETE FROM seller " +
-					"WHERE Id = ? ");
+			conn = dataSource.getConnection();
+			changeLog.begin(conn);
+			ps = conn.prepareStatement(DELETE_SQL);
 			
 			ps.setInt(1, id);
 			
@@ -108,144 +204,462 @@ public class SellerDaoJDBC implements SellerDao {
 			if (affectedRows == 0) {
 				throw new DbException("Delete not executed! The ID does not exists!");
 			}
+			changeLog.commit(conn, ChangeLogEntry.SELLER, id, ChangeLogEntry.Operation.DELETE);
 		} catch (SQLException e) {
-			throw new DbException("Error during the delete command SQLState=" + e.getSQLState() + "\n Message error: " + e.getMessage());
+			throw new DbException("Error during the delete command SQLState=" + e.getSQLState() + "\n Message error: " + e.getMessage(), e);
 		} finally {
 			DB.closeStatement(ps);
+			DB.closeConnection(conn);
 		}
 	}
 
+	@Override
+	public void insertAll(Collection<Seller> sellers) {
+		batch.execute(INSERT_SQL, sellers, this::bindSeller, (seller, id) -> {
+			seller.setId(id);
+			seller.setVersion(0);
+		}, null, null, changeLog.chunkWriter(ChangeLogEntry.SELLER, ChangeLogEntry.Operation.INSERT, Seller::getId));
+	}
+
+	@Override
+	public void updateAll(Collection<Seller> sellers) {
+		batch.execute(UPDATE_SQL, sellers, (ps, seller) -> {
+			bindSeller(ps, seller);
+			bindIdAndVersion(ps, seller);
+		}, null, seller -> seller.setVersion(seller.getVersion() + 1), this::conflict,
+				changeLog.chunkWriter(ChangeLogEntry.SELLER, ChangeLogEntry.Operation.UPDATE, Seller::getId));
+	}
+
+	@Override
+	public void deleteByIds(Collection<Integer> ids) {
+		batch.execute(DELETE_SQL, ids, (ps, id) -> ps.setInt(1, id), null, null, null,
+				changeLog.chunkWriter(ChangeLogEntry.SELLER, ChangeLogEntry.Operation.DELETE, id -> id));
+	}
+
 	@Override
 	public Seller findById(Integer id) {
 
+		Connection conn = null;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 
 		try {
-			ps = conn.prepareStatement(
-					"SELECT seller.*,department.Name as DepName " + "FROM seller INNER JOIN department "
-							+ "ON seller.DepartmentId = department.Id " + "WHERE seller.Id = ?");
+			conn = dataSource.getConnection();
+			ps = conn.prepareStatement(FIND_BY_ID_SQL);
 
 			ps.setInt(1, id);
 			rs = ps.executeQuery();
 
-			if (rs.next()) {
-				Department department = instantiateDepartment(rs);
-				Seller seller = intantiateSeller(rs, department);
-
-				return seller;
-			} else {
-				return null;
-			}
+			return rowMapper.mapFirst(FIND_BY_ID_SQL, rs);
 		} catch (SQLException e) {
 			throw new DbException(e.getMessage());
 		} finally {
 			DB.closeStatement(ps);
 			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
 	public List<Seller> findAll() {
 		
+		Connection conn = null;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 
 		try {
-			ps = conn.prepareStatement(
-					"SELECT seller.*,department.Name as DepName FROM seller INNER JOIN department "
-							+ "ON seller.DepartmentId = department.Id ORDER BY Id");
+			conn = dataSource.getConnection();
+			ps = conn.prepareStatement(FIND_ALL_SQL);
+
+			rs = ps.executeQuery();
+
+			return rowMapper.mapAll(FIND_ALL_SQL, rs);
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		} finally {
+			DB.closeStatement(ps);
+			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
+	}
 
+	@Override
+	public List<Seller> findAllByDepartment(Department department) {
+
+		Connection conn = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+
+		try {
+			conn = dataSource.getConnection();
+			ps = conn.prepareStatement(FIND_BY_DEPARTMENT_SQL);
+
+			ps.setInt(1, department.getId());
 			rs = ps.executeQuery();
 
-			// List with seller to return it.
-			List<Seller> sellerList = new ArrayList<>();
-			// A map to add the departments and avoid duplicated instances
-			Map<Integer, Department> mapList = new HashMap<>();
+			return rowMapper.mapAll(FIND_BY_DEPARTMENT_SQL, rs);
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		} finally {
+			DB.closeStatement(ps);
+			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
+	}
+	
+	@Override
+	public Page<Seller> findPage(PageRequest<Seller> request) {
+		return search(new SellerSearchCriteria(), request);
+	}
 
-			while (rs.next()) {
+	@Override
+	public int count() {
+		return count(new SellerSearchCriteria());
+	}
 
-				// If the department already exits inside the mapList, the function
-				// "mapList.get" is going to returns null
-				// because the HashMap does not allows duplicate elements.
-				Department dep = mapList.get(rs.getInt("DepartmentId"));
+	@Override
+	public boolean existsByEmail(String email, Integer excludingId) {
 
-				if (dep == null) {
-					dep = instantiateDepartment(rs);
-					mapList.put(rs.getInt("DepartmentId"), dep);
-				}
+		Connection conn = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+
+		try {
+			conn = dataSource.getConnection();
+			ps = conn.prepareStatement(EXISTS_BY_EMAIL_SQL);
+
+			ps.setString(1, email);
+			ps.setInt(2, excludingId == null ? 0 : excludingId);
+			rs = ps.executeQuery();
+
+			return rs.next();
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		} finally {
+			DB.closeStatement(ps);
+			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
+	}
+
+	@Override
+	public Page<Seller> search(SellerSearchCriteria criteria, PageRequest<Seller> request) {
+
+		Connection conn = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+
+		boolean backwards = request.getDirection() == PageRequest.Direction.BEFORE;
+
+		List<Object> params = new ArrayList<>();
+		String text = searchSql(criteria, request, params);
+		// One extra row tells if there is another page
+		params.add(request.getSize() + 1);
+		if (request.getDirection() == PageRequest.Direction.OFFSET) {
+			params.add(request.getOffset());
+		}
 
-				Seller seller = intantiateSeller(rs, dep);
-				sellerList.add(seller);
+		try {
+			conn = dataSource.getConnection();
+			ps = conn.prepareStatement(text);
+			bindParams(ps, params);
+			rs = ps.executeQuery();
+
+			List<Seller> sellerList = rowMapper.mapAll(text, rs);
+			boolean hasMore = sellerList.size() > request.getSize();
+			if (hasMore) {
+				sellerList.remove(sellerList.size() - 1);
+			}
+			if (backwards) {
+				Collections.reverse(sellerList);
+				return new Page<>(sellerList, request.getSize(), true, hasMore);
 			}
-			return sellerList;
+			return new Page<>(sellerList, request.getSize(), hasMore,
+					request.getDirection() == PageRequest.Direction.AFTER || request.getOffset() > 0);
 		} catch (SQLException e) {
 			throw new DbException(e.getMessage());
 		} finally {
 			DB.closeStatement(ps);
 			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
-	public List<Seller> findAllByDepartment(Department department) {
+	public int count(SellerSearchCriteria criteria) {
 
+		Connection conn = null;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 
+		List<Object> params = new ArrayList<>();
+		String text = countSql(criteria, params);
+
 		try {
-			ps = conn.prepareStatement(
-					"SELECT seller.*,department.Name as DepName " + "FROM seller INNER JOIN department "
-							+ "ON seller.DepartmentId = department.Id " + "WHERE DepartmentId = ? " + "ORDER BY Name ");
+			conn = dataSource.getConnection();
+			ps = conn.prepareStatement(text);
+			bindParams(ps, params);
+
+			rs = ps.executeQuery();
+			rs.next();
+			return rs.getInt(1);
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		} finally {
+			DB.closeStatement(ps);
+			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
+	}
+
+	private static String searchSql(SellerSearchCriteria criteria, PageRequest<Seller> request, List<Object> params) {
+		StringBuilder sql = new StringBuilder(SELECT_SQL + "WHERE 1 = 1 ");
+		appendCriteria(sql, params, criteria);
+		appendSeek(sql, params, criteria, request, request.getDirection() == PageRequest.Direction.BEFORE);
+		return sql.toString();
+	}
+
+	private static String countSql(SellerSearchCriteria criteria, List<Object> params) {
+		StringBuilder sql = new StringBuilder(
+				"SELECT COUNT(*) FROM seller INNER JOIN department ON seller.DepartmentId = department.Id WHERE 1 = 1 ");
+		appendCriteria(sql, params, criteria);
+		return sql.toString();
+	}
+
+	// The statements of the first seller screens: the list without filters (count and first
+	// page), findAll, findById and the email check of the form. They are prepared on the pool connections at startup.
+	public static List<String> hotStatements() {
+		SellerSearchCriteria criteria = new SellerSearchCriteria();
+		return Arrays.asList(
+				countSql(criteria, new ArrayList<>()),
+				searchSql(criteria, PageRequest.first(1), new ArrayList<>()),
+				FIND_ALL_SQL,
+				FIND_BY_ID_SQL,
+				EXISTS_BY_EMAIL_SQL);
+	}
+
+	// Only the filters in use become conditions, so there are few different SQL texts and
+	// all of them stay in the statement cache. The prefixes end with % and nothing before
+	// them, that way the indexes on Name and Email can be used.
+	private static void appendCriteria(StringBuilder sql, List<Object> params, SellerSearchCriteria criteria) {
+		if (criteria.getNamePrefix() != null && !criteria.getNamePrefix().isEmpty()) {
+			sql.append("AND seller.Name LIKE ? ESCAPE '!' ");
+			params.add(escapeLike(criteria.getNamePrefix()) + "%");
+		}
+		if (criteria.getEmailPrefix() != null && !criteria.getEmailPrefix().isEmpty()) {
+			sql.append("AND seller.Email LIKE ? ESCAPE '!' ");
+			params.add(escapeLike(criteria.getEmailPrefix()) + "%");
+		}
+		if (criteria.getDepartmentId() != null) {
+			sql.append("AND seller.DepartmentId = ? ");
+			params.add(criteria.getDepartmentId());
+		}
+		if (criteria.getMinSalary() != null) {
+			sql.append("AND seller.BaseSalary >= ? ");
+			params.add(criteria.getMinSalary());
+		}
+		if (criteria.getMaxSalary() != null) {
+			sql.append("AND seller.BaseSalary <= ? ");
+			params.add(criteria.getMaxSalary());
+		}
+	}
+
+	// Keyset condition and order. The sort key is not unique, so the id breaks the ties:
+	// the page starts after the anchor's (key, id) and the order is (key, id) too, which an
+	// index on the key column can serve because InnoDB indexes end with the primary key.
+	// A page before the anchor runs the same query in the opposite direction.
+	private static void appendSeek(StringBuilder sql, List<Object> params, SellerSearchCriteria criteria,
+			PageRequest<Seller> request, boolean backwards) {
+		SellerSortKey key = criteria.getSortKey();
+		boolean forward = criteria.isAscending() != backwards;
+		String comparison = forward ? ">" : "<";
+		String direction = forward ? "ASC" : "DESC";
+
+		Seller anchor = request.getAnchor();
+		if (anchor != null) {
+			if (key == SellerSortKey.ID) {
+				sql.append("AND seller.Id ").append(comparison).append(" ? ");
+				params.add(anchor.getId());
+			} else {
+				sql.append("AND (").append(key.getColumn()).append(' ').append(comparison).append(" ? OR (")
+						.append(key.getColumn()).append(" = ? AND seller.Id ").append(comparison).append(" ?)) ");
+				params.add(key.valueOf(anchor));
+				params.add(key.valueOf(anchor));
+				params.add(anchor.getId());
+			}
+		}
+
+		sql.append("ORDER BY ");
+		if (key != SellerSortKey.ID) {
+			sql.append(key.getColumn()).append(' ').append(direction).append(", ");
+		}
+		sql.append("seller.Id ").append(direction).append(" LIMIT ?");
+		if (request.getDirection() == PageRequest.Direction.OFFSET) {
+			sql.append(" OFFSET ?");
+		}
+	}
+
+	private static String escapeLike(String text) {
+		return text.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+	}
+
+	private static void bindParams(PreparedStatement ps, List<Object> params) throws SQLException {
+		for (int i = 0; i < params.size(); i++) {
+			ps.setObject(i + 1, params.get(i));
+		}
+	}
+
+	@Override
+	public void streamAll(RowCallback<Seller> callback) {
+
+		Connection conn = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		boolean finished = false;
+
+		try {
+			conn = dataSource.getConnection();
+			// Forward-only and read-only cursor, the driver does not buffer the whole result
+			ps = conn.prepareStatement(STREAM_ALL_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(streamFetchSize);
 
-			ps.setInt(1, department.getId());
 			rs = ps.executeQuery();
+			int[] columns = rowMapper.columns(STREAM_ALL_SQL, rs);
+
+			// Only the departments are kept, there are few of them
+			Map<Integer, Department> departments = new HashMap<>();
 
-			// List with seller to return it.
-			List<Seller> sellerList = new ArrayList<>();
-			// A map to add the departments and avoid duplicated instances
-			Map<Integer, Department> mapList = new HashMap<>();
+			boolean more = rs.next();
+			while (more && callback.accept(rowMapper.mapRow(rs, columns, departments))) {
+				more = rs.next();
+			}
+			finished = !more;
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		} finally {
+			if (!finished) {
+				stopStreaming(ps, rs);
+				rs = null;
+			}
+			DB.closeResultSet(rs);
+			DB.closeStatement(ps);
+			DB.closeConnection(conn);
+		}
+	}
+
+	// Closing a streaming result set reads and discards the rest of the rows, so a stopped
+	// export would still wait for the whole table. The server stops sending them first.
+	private static void stopStreaming(Statement st, ResultSet rs) {
+		if (st != null) {
+			try {
+				st.cancel();
+			} catch (SQLException e) {
+				// The rows are read by close, the export only ends later
+			}
+		}
+		if (rs != null) {
+			try {
+				rs.close();
+			} catch (SQLException e) {
+				// The query was interrupted, which is what cancel asked for
+			}
+		}
+	}
+
+	@Override
+	public List<SalaryStatistics> salaryStatisticsByDepartment() {
+
+		Connection conn = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+
+		try {
+			conn = dataSource.getConnection();
+			ps = conn.prepareStatement(
+					"SELECT s.DepartmentId AS GroupId, s.DepName AS GroupName, " + STATISTICS_COLUMNS
+							+ "FROM (SELECT seller.DepartmentId, department.Name AS DepName, seller.BaseSalary, "
+							+ "ROW_NUMBER() OVER (PARTITION BY seller.DepartmentId ORDER BY seller.BaseSalary) AS RowNumber, "
+							+ "COUNT(*) OVER (PARTITION BY seller.DepartmentId) AS GroupSize "
+							+ "FROM seller INNER JOIN department ON seller.DepartmentId = department.Id) s "
+							+ "GROUP BY s.DepartmentId, s.DepName ORDER BY s.DepName");
 
+			rs = ps.executeQuery();
+
+			List<SalaryStatistics> list = new ArrayList<>();
 			while (rs.next()) {
+				list.add(instantiateStatistics(rs, rs.getString("GroupName")));
+			}
+			return list;
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		} finally {
+			DB.closeStatement(ps);
+			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
+	}
 
-				// If the department already exits inside the mapList, the function
-				// "mapList.get" is going to returns null
-				// because the HashMap does not allows duplicate elements.
-				Department dep = mapList.get(rs.getInt("DepartmentId"));
+	@Override
+	public List<SalaryStatistics> salaryStatisticsByBirthYear(int yearsPerGroup) {
 
-				if (dep == null) {
-					dep = instantiateDepartment(rs);
-					mapList.put(rs.getInt("DepartmentId"), dep);
-				}
+		Connection conn = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+
+		try {
+			conn = dataSource.getConnection();
+			// The group id is the first birth year of the range
+			ps = conn.prepareStatement(
+					"SELECT s.YearGroup AS GroupId, " + STATISTICS_COLUMNS
+							+ "FROM (SELECT b.YearGroup, b.BaseSalary, "
+							+ "ROW_NUMBER() OVER (PARTITION BY b.YearGroup ORDER BY b.BaseSalary) AS RowNumber, "
+							+ "COUNT(*) OVER (PARTITION BY b.YearGroup) AS GroupSize "
+							+ "FROM (SELECT FLOOR(YEAR(seller.BirthDate) / ?) * ? AS YearGroup, seller.BaseSalary "
+							+ "FROM seller) b) s "
+							+ "GROUP BY s.YearGroup ORDER BY s.YearGroup");
+
+			ps.setInt(1, yearsPerGroup);
+			ps.setInt(2, yearsPerGroup);
+			rs = ps.executeQuery();
 
-				Seller seller = intantiateSeller(rs, dep);
-				sellerList.add(seller);
+			List<SalaryStatistics> list = new ArrayList<>();
+			while (rs.next()) {
+				int firstYear = rs.getInt("GroupId");
+				String name = yearsPerGroup == 1
+						? String.valueOf(firstYear)
+						: firstYear + "-" + (firstYear + yearsPerGroup - 1);
+				list.add(instantiateStatistics(rs, name));
 			}
-			return sellerList;
+			return list;
 		} catch (SQLException e) {
 			throw new DbException(e.getMessage());
 		} finally {
 			DB.closeStatement(ps);
 			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
 		}
 	}
-	
-	private Seller intantiateSeller(ResultSet rs, Department department) throws SQLException {
-		Seller seller = new Seller(
-				rs.getInt("Id"), 
-				rs.getString("Name"), 
-				rs.getString("Email"),
-				//rs.getDate("BirthDate"),
-				new java.util.Date(rs.getTimestamp("BirthDate").getTime()),
-				rs.getDouble("BaseSalary"), 
-				department);
-		return seller;
-	}
-
-	private Department instantiateDepartment(ResultSet rs) throws SQLException {
-		Department dep = new Department(
-				rs.getInt("DepartmentId"), 
-				rs.getString("DepName"));
-		return dep;
-	}
-}
\ No newline at end of file
+
+	private SalaryStatistics instantiateStatistics(ResultSet rs, String groupName) throws SQLException {
+		SalaryStatistics statistics = new SalaryStatistics(
+				rs.getInt("GroupId"),
+				groupName,
+				rs.getInt("Headcount"),
+				rs.getDouble("Payroll"),
+				rs.getDouble("Average"),
+				rs.getDouble("Minimum"),
+				rs.getDouble("Maximum"),
+				rs.getDouble("Median"),
+				rs.getDouble("Percentile90"));
+		return statistics;
+	}
+
+	// Parameters 1 to 5, shared by insert and update
+	private void bindSeller(PreparedStatement ps, Seller seller) throws SQLException {
+		ps.setString(1, seller.getName());
+		ps.setString(2, seller.getEmail());
+		ps.setDate(3, new java.sql.Date(seller.getBirthDate().getTime()));
+		ps.setDouble(4, seller.getBaseSalary());
+		ps.setInt(5, seller.getDepartment().getId());
+	}
+}
@@ -0,0 +1,73 @@
+package model.dao.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.dao.DepartmentCache;
+import model.entities.Department;
+import model.entities.Seller;
+
+// Maps the rows of "SELECT seller.*,department.Name as DepName ..." queries
+class SellerRowMapper extends RowMapper<Seller> {
+
+	private static final int ID = 0;
+	private static final int NAME = 1;
+	private static final int EMAIL = 2;
+	private static final int BIRTH_DATE = 3;
+	private static final int BASE_SALARY = 4;
+	private static final int DEPARTMENT_ID = 5;
+	private static final int DEPARTMENT_NAME = 6;
+	private static final int VERSION = 7;
+
+	// Gives the shared Department instances of the reference data cache
+	private final DepartmentCache departmentCache;
+
+	SellerRowMapper(DepartmentCache departmentCache) {
+		super("Id", "Name", "Email", "BirthDate", "BaseSalary", "DepartmentId", "DepName", "Version");
+		this.departmentCache = departmentCache;
+	}
+
+	@Override
+	Seller mapRow(ResultSet rs, int[] columns) throws SQLException {
+		return mapRow(rs, columns, null);
+	}
+
+	// All the rows share one Department instance per department
+	@Override
+	List<Seller> mapAll(String sql, ResultSet rs) throws SQLException {
+		int[] columns = columns(sql, rs);
+		List<Seller> list = new ArrayList<>();
+		Map<Integer, Department> departments = new HashMap<>();
+		while (rs.next()) {
+			list.add(mapRow(rs, columns, departments));
+		}
+		return list;
+	}
+
+	// The departments already read by the query are taken from the map, when there is one
+	Seller mapRow(ResultSet rs, int[] columns, Map<Integer, Department> departments) throws SQLException {
+		int departmentId = rs.getInt(columns[DEPARTMENT_ID]);
+		Department dep = departments == null ? null : departments.get(departmentId);
+		if (dep == null) {
+			dep = departmentCache.resolve(departmentId, rs.getString(columns[DEPARTMENT_NAME]));
+			if (departments != null) {
+				departments.put(departmentId, dep);
+			}
+		}
+
+		// java.sql.Date is a java.util.Date, there is no need to copy it
+		Seller seller = new Seller(
+				rs.getInt(columns[ID]),
+				rs.getString(columns[NAME]),
+				rs.getString(columns[EMAIL]),
+				rs.getDate(columns[BIRTH_DATE]),
+				rs.getDouble(columns[BASE_SALARY]),
+				dep);
+		seller.setVersion(rs.getInt(columns[VERSION]));
+		return seller;
+	}
+}
@@ -7,6 +7,7 @@ public class Department implements Serializable {
 	private static final long serialVersionUID = 1L;
 	private Integer id;
 	private String name;
+	private Integer version;
 	
 	public Department() {
 	}
@@ -32,6 +33,15 @@ public class Department implements Serializable {
 		this.name = name;
 	}
 
+	// Null for an entity that was not read from the database
+	public Integer getVersion() {
+		return version;
+	}
+
+	public void setVersion(Integer version) {
+		this.version = version;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -0,0 +1,113 @@
+package model.entities;
+
+import java.io.Serializable;
+
+// Salary aggregates of one group of sellers (a department or a range of birth years)
+public class SalaryStatistics implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private Integer groupId;
+	private String groupName;
+	private Integer headcount;
+	private Double payroll;
+	private Double average;
+	private Double minimum;
+	private Double maximum;
+	private Double median;
+	private Double percentile90;
+
+	public SalaryStatistics() {
+	}
+
+	public SalaryStatistics(Integer groupId, String groupName, Integer headcount, Double payroll, Double average,
+			Double minimum, Double maximum, Double median, Double percentile90) {
+		this.groupId = groupId;
+		this.groupName = groupName;
+		this.headcount = headcount;
+		this.payroll = payroll;
+		this.average = average;
+		this.minimum = minimum;
+		this.maximum = maximum;
+		this.median = median;
+		this.percentile90 = percentile90;
+	}
+
+	public Integer getGroupId() {
+		return groupId;
+	}
+
+	public void setGroupId(Integer groupId) {
+		this.groupId = groupId;
+	}
+
+	public String getGroupName() {
+		return groupName;
+	}
+
+	public void setGroupName(String groupName) {
+		this.groupName = groupName;
+	}
+
+	public Integer getHeadcount() {
+		return headcount;
+	}
+
+	public void setHeadcount(Integer headcount) {
+		this.headcount = headcount;
+	}
+
+	public Double getPayroll() {
+		return payroll;
+	}
+
+	public void setPayroll(Double payroll) {
+		this.payroll = payroll;
+	}
+
+	public Double getAverage() {
+		return average;
+	}
+
+	public void setAverage(Double average) {
+		this.average = average;
+	}
+
+	public Double getMinimum() {
+		return minimum;
+	}
+
+	public void setMinimum(Double minimum) {
+		this.minimum = minimum;
+	}
+
+	public Double getMaximum() {
+		return maximum;
+	}
+
+	public void setMaximum(Double maximum) {
+		this.maximum = maximum;
+	}
+
+	public Double getMedian() {
+		return median;
+	}
+
+	public void setMedian(Double median) {
+		this.median = median;
+	}
+
+	public Double getPercentile90() {
+		return percentile90;
+	}
+
+	public void setPercentile90(Double percentile90) {
+		this.percentile90 = percentile90;
+	}
+
+	@Override
+	public String toString() {
+		return "SalaryStatistics [groupId=" + groupId + ", groupName=" + groupName + ", headcount=" + headcount
+				+ ", payroll=" + payroll + ", average=" + average + ", minimum=" + minimum + ", maximum=" + maximum
+				+ ", median=" + median + ", percentile90=" + percentile90 + "]";
+	}
+}
@@ -13,6 +13,7 @@ public class Seller implements Serializable {
 	private Double baseSalary;
 	
 	private Department department;
+	private Integer version;
 	
 	public Seller() {
 	}
@@ -26,6 +27,12 @@ public class Seller implements Serializable {
 		this.department = department;
 	}
 
+	// The department and the birth date are shared, the forms replace them instead of changing them
+	public Seller(Seller other) {
+		this(other.id, other.name, other.email, other.birthDate, other.baseSalary, other.department);
+		this.version = other.version;
+	}
+
 	public Integer getId() {
 		return id;
 	}
@@ -74,6 +81,15 @@ public class Seller implements Serializable {
 		this.department = department;
 	}
 
+	// Null for an entity that was not read from the database
+	public Integer getVersion() {
+		return version;
+	}
+
+	public void setVersion(Integer version) {
+		this.version = version;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -0,0 +1,15 @@
+package model.services;
+
+import model.entities.Department;
+import model.validation.Field;
+import model.validation.Rules;
+import model.validation.Validator;
+
+// The department rules, checked by DepartmentService and by the department form
+public class DepartmentRules {
+
+	public static final Field<Department, String> NAME = new Field<>("name", Department::getName, 30, null,
+			Rules.required());
+
+	public static final Validator<Department> VALIDATOR = new Validator<>(NAME);
+}
@@ -1,28 +1,103 @@
 package model.services;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import model.dao.DepartmentCache;
 import model.dao.DepartmentDao;
+import model.dao.EntityCache;
 import model.dao.FactoryDao;
 import model.entities.Department;
+import model.entities.Seller;
 
 public class DepartmentService {
 	
 	private DepartmentDao deptDao = FactoryDao.createDepartmentDao();
+	private DepartmentCache cache = FactoryDao.getDepartmentCache();
 	
+	// The departments are served from the cache, the table is only read when it is empty or expired
 	public List<Department> findAll(){
-		return deptDao.findAll();
+		return cache.getAll(deptDao::findAll);
+	}
+	
+	public Department findById(Integer id) {
+		return cache.getById(id, deptDao::findAll);
 	}
 	
 	public void saveOrUpdate(Department department) {
-		if (department.getId() == null) {
-			deptDao.insert(department);
-		} else {
-			deptDao.update(department);
+		DepartmentRules.VALIDATOR.validate(department);
+		try {
+			if (department.getId() == null) {
+				deptDao.insert(department);
+			} else {
+				deptDao.update(department);
+			}
+		} finally {
+			invalidateCaches();
 		}
 	}
 	
 	public void remove(Department department) {
-		deptDao.deleteById(department.getId());
+		try {
+			deptDao.deleteById(department.getId());
+		} finally {
+			invalidateCaches();
+		}
+	}
+
+	// Bulk maintenance: the new departments are inserted and the others updated, both in JDBC batches
+	public void saveOrUpdateAll(Collection<Department> departments) {
+		List<Department> inserts = new ArrayList<>();
+		List<Department> updates = new ArrayList<>();
+		for (Department department : departments) {
+			DepartmentRules.VALIDATOR.validate(department);
+			if (department.getId() == null) {
+				inserts.add(department);
+			} else {
+				updates.add(department);
+			}
+		}
+		try {
+			deptDao.insertAll(inserts);
+			deptDao.updateAll(updates);
+		} finally {
+			invalidateCaches();
+		}
+	}
+
+	public void removeAll(Collection<Department> departments) {
+		List<Integer> ids = new ArrayList<>();
+		for (Department department : departments) {
+			ids.add(department.getId());
+		}
+		try {
+			deptDao.deleteByIds(ids);
+		} finally {
+			invalidateCaches();
+		}
+	}
+
+	// The cached sellers hold the departments too, so they are dropped with them
+	private void invalidateCaches() {
+		cache.invalidate();
+		EntityCache<Integer, Seller> sellerCache = FactoryDao.getSellerCache();
+		if (sellerCache != null) {
+			sellerCache.invalidateAll();
+		}
+	}
+
+	// The async versions run on the ServiceExecutor, so the UI thread never waits for JDBC
+	public CompletableFuture<List<Department>> findAllAsync() {
+		return ServiceExecutor.supply(this::findAll);
+	}
+
+	public CompletableFuture<Void> saveOrUpdateAsync(Department department) {
+		return ServiceExecutor.run(() -> saveOrUpdate(department));
+	}
+
+	public CompletableFuture<Void> removeAsync(Department department) {
+		return ServiceExecutor.run(() -> remove(department));
 	}
 }
@@ -0,0 +1,5 @@
+package model.services;
+
+public enum ExportFormat {
+	CSV, JSON_LINES
+}
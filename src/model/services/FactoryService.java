@@ -0,0 +1,115 @@
+package model.services;
+
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+
+import db.DB;
+import db.DbDuplicateKeyException;
+import model.dao.FactoryDao;
+import model.dao.SellerDao;
+import model.entities.Seller;
+
+// The services only hold their DAO and every call borrows its own connection,
+// so one instance of each is shared by all the screens
+public class FactoryService {
+
+	private static SellerService sellerService = null;
+	private static DepartmentService departmentService = null;
+	private static WriteBehindQueue<Seller> sellerWriteQueue = null;
+
+	public static synchronized SellerService getSellerService() {
+		if (sellerService == null) {
+			sellerService = new SellerService(getSellerWriteQueue());
+		}
+		return sellerService;
+	}
+
+	public static synchronized DepartmentService getDepartmentService() {
+		if (departmentService == null) {
+			departmentService = new DepartmentService();
+		}
+		return departmentService;
+	}
+
+	// Write-behind of the seller updates, it is null when writeBehind.enabled is not true.
+	// A flush is never bigger than jdbc.batchSize, so every flush is one transaction.
+	public static synchronized WriteBehindQueue<Seller> getSellerWriteQueue() {
+		Properties props = DB.getProperties();
+		if (sellerWriteQueue == null && Boolean.parseBoolean(props.getProperty("writeBehind.enabled", "false"))) {
+			SellerDao dao = FactoryDao.createSellerDao();
+			sellerWriteQueue = new WriteBehindQueue<>("seller",
+					Paths.get(props.getProperty("writeBehind.journalFile", "seller-writes.journal")),
+					new WriteBehindQueue.Store<Seller>() {
+
+						@Override
+						public Integer getId(Seller seller) {
+							return seller.getId();
+						}
+
+						@Override
+						public Integer getVersion(Seller seller) {
+							return seller.getVersion();
+						}
+
+						@Override
+						public void setVersion(Seller seller, Integer version) {
+							seller.setVersion(version);
+						}
+
+						@Override
+						public void writeAll(List<Seller> sellers) {
+							sellers.forEach(SellerRules.VALIDATOR::validate);
+							try {
+								dao.updateAll(sellers);
+							} catch (DbDuplicateKeyException e) {
+								throw SellerService.emailInUse();
+							}
+						}
+
+						// A repeated email is a rejection like the other validation errors
+						@Override
+						public void write(Seller seller) {
+							SellerRules.VALIDATOR.validate(seller);
+							try {
+								dao.update(seller);
+							} catch (DbDuplicateKeyException e) {
+								throw SellerService.emailInUse();
+							}
+						}
+
+						@Override
+						public boolean sameValues(Seller seller, Seller row) {
+							return Objects.equals(seller.getName(), row.getName())
+									&& Objects.equals(seller.getEmail(), row.getEmail())
+									&& sameTime(seller.getBirthDate(), row.getBirthDate())
+									&& Objects.equals(seller.getBaseSalary(), row.getBaseSalary())
+									&& Objects.equals(departmentId(seller), departmentId(row));
+						}
+					},
+					Math.min(DB.getInt(props, "writeBehind.batchSize", 100), DB.getInt(props, "jdbc.batchSize", 500)),
+					DB.getInt(props, "writeBehind.flushIntervalMillis", 1000),
+					DB.getInt(props, "writeBehind.maxRetryDelayMillis", 60000));
+		}
+		return sellerWriteQueue;
+	}
+
+	// A java.sql.Date read from the database does not equal the java.util.Date of the form
+	private static boolean sameTime(Date a, Date b) {
+		return a == null ? b == null : b != null && a.getTime() == b.getTime();
+	}
+
+	private static Integer departmentId(Seller seller) {
+		return seller.getDepartment() == null ? null : seller.getDepartment().getId();
+	}
+
+	// Called when the application stops, the updates not flushed in time stay in the journal
+	public static synchronized void shutdown(long timeoutMillis) {
+		if (sellerWriteQueue != null) {
+			sellerWriteQueue.close(timeoutMillis);
+			sellerWriteQueue = null;
+		}
+	}
+}
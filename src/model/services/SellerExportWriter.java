@@ -0,0 +1,110 @@
+package model.services;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+
+import model.entities.Seller;
+
+// Writes one seller per line straight to the writer, nothing is kept between the rows
+class SellerExportWriter {
+
+	private final Writer writer;
+	private final ExportFormat format;
+
+	SellerExportWriter(Writer writer, ExportFormat format) {
+		this.writer = writer;
+		this.format = format;
+	}
+
+	void writeHeader() throws IOException {
+		if (format == ExportFormat.CSV) {
+			writer.write("Id,Name,Email,BirthDate,BaseSalary,DepartmentId,DepartmentName\n");
+		}
+	}
+
+	void write(Seller seller) throws IOException {
+		if (format == ExportFormat.CSV) {
+			writeCsv(seller);
+		} else {
+			writeJson(seller);
+		}
+	}
+
+	private void writeCsv(Seller seller) throws IOException {
+		writer.write(String.valueOf(seller.getId()));
+		writer.write(',');
+		writeCsvText(seller.getName());
+		writer.write(',');
+		writeCsvText(seller.getEmail());
+		writer.write(',');
+		writer.write(formatDate(seller.getBirthDate()));
+		writer.write(',');
+		writer.write(String.valueOf(seller.getBaseSalary()));
+		writer.write(',');
+		writer.write(String.valueOf(seller.getDepartment().getId()));
+		writer.write(',');
+		writeCsvText(seller.getDepartment().getName());
+		writer.write('\n');
+	}
+
+	private void writeJson(Seller seller) throws IOException {
+		writer.write("{\"id\":");
+		writer.write(String.valueOf(seller.getId()));
+		writer.write(",\"name\":");
+		writeJsonText(seller.getName());
+		writer.write(",\"email\":");
+		writeJsonText(seller.getEmail());
+		writer.write(",\"birthDate\":");
+		writeJsonText(formatDate(seller.getBirthDate()));
+		writer.write(",\"baseSalary\":");
+		writer.write(String.valueOf(seller.getBaseSalary()));
+		writer.write(",\"departmentId\":");
+		writer.write(String.valueOf(seller.getDepartment().getId()));
+		writer.write(",\"departmentName\":");
+		writeJsonText(seller.getDepartment().getName());
+		writer.write("}\n");
+	}
+
+	private void writeCsvText(String text) throws IOException {
+		if (text == null) {
+			return;
+		}
+		if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+			writer.write(text);
+			return;
+		}
+		writer.write('"');
+		writer.write(text.replace("\"", "\"\""));
+		writer.write('"');
+	}
+
+	private void writeJsonText(String text) throws IOException {
+		if (text == null) {
+			writer.write("null");
+			return;
+		}
+		writer.write('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				writer.write('\\');
+				writer.write(c);
+			} else if (c < 0x20) {
+				writer.write(String.format("\\u%04x", (int) c));
+			} else {
+				writer.write(c);
+			}
+		}
+		writer.write('"');
+	}
+
+	private static String formatDate(Date date) {
+		if (date == null) {
+			return "";
+		}
+		return Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate().toString();
+	}
+}
@@ -0,0 +1,31 @@
+package model.services;
+
+import java.util.Date;
+import java.util.regex.Pattern;
+
+import model.entities.Department;
+import model.entities.Seller;
+import model.validation.Field;
+import model.validation.Rules;
+import model.validation.Validator;
+
+// The seller rules, checked by SellerService before every write and by the seller form
+// while the user types and before the save
+public class SellerRules {
+
+	public static final Pattern EMAIL_PATTERN = Pattern.compile("[^@\\s]+@[^@\\s]+");
+
+	public static final Field<Seller, String> NAME = new Field<>("name", Seller::getName, 50, null,
+			Rules.required());
+	public static final Field<Seller, String> EMAIL = new Field<>("email", Seller::getEmail, 70,
+			Rules.NO_SPACES_INPUT, Rules.required(), Rules.matches(EMAIL_PATTERN, "Invalid email"));
+	public static final Field<Seller, Date> BIRTH_DATE = new Field<>("birthDate", Seller::getBirthDate,
+			Rules.required(), Rules.notInTheFuture());
+	public static final Field<Seller, Double> BASE_SALARY = new Field<>("baseSalary", Seller::getBaseSalary, 0,
+			Rules.DECIMAL_INPUT, Rules.required(), Rules.min(0));
+	public static final Field<Seller, Department> DEPARTMENT = new Field<>("department", Seller::getDepartment,
+			Rules.required());
+
+	public static final Validator<Seller> VALIDATOR = new Validator<>(NAME, EMAIL, BIRTH_DATE, BASE_SALARY,
+			DEPARTMENT);
+}
@@ -1,28 +1,284 @@
 package model.services;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
 
+import db.DbDuplicateKeyException;
 import model.dao.SellerDao;
+import model.dao.SellerSearchCriteria;
 import model.dao.FactoryDao;
+import model.dao.Page;
+import model.dao.PageRequest;
+import model.entities.SalaryStatistics;
 import model.entities.Seller;
+import model.exceptions.ValidationException;
 
 public class SellerService {
 	
+	private static final int EXPORT_PROGRESS_INTERVAL = 1000;
+
+	public static final String EMAIL_IN_USE = "Email already used by another seller";
+	
 	private SellerDao sellerDao = FactoryDao.createSellerDao();
+
+	// With write-behind the updates are flushed later, null when they are written by saveOrUpdate
+	private final WriteBehindQueue<Seller> writeQueue;
+
+	public SellerService() {
+		this(null);
+	}
+
+	public SellerService(WriteBehindQueue<Seller> writeQueue) {
+		this.writeQueue = writeQueue;
+	}
 	
+	// The reads show the updates still in the write-behind queue
 	public List<Seller> findAll(){
-		return sellerDao.findAll();
+		return withPending(sellerDao.findAll());
+	}
+	
+	// Keyset pagination, the next and previous requests come from the returned page
+	public Page<Seller> findPage(PageRequest<Seller> request) {
+		Page<Seller> page = sellerDao.findPage(request);
+		withPending(page.getContent());
+		return page;
+	}
+
+	public int count() {
+		return sellerDao.count();
+	}
+
+	public Seller findById(Integer id) {
+		Seller pending = writeQueue == null ? null : writeQueue.getPending(id);
+		return pending != null ? pending : sellerDao.findById(id);
+	}
+
+	// Keyset paginated search, the filters run in the database
+	public Page<Seller> search(SellerSearchCriteria criteria, PageRequest<Seller> request) {
+		Page<Seller> page = sellerDao.search(criteria, request);
+		withPending(page.getContent());
+		return page;
+	}
+
+	public int count(SellerSearchCriteria criteria) {
+		return sellerDao.count(criteria);
 	}
 	
+	// The rules of SellerRules and an email not used by another seller. With write-behind an
+	// update returns once it is in the journal; a new seller is always inserted here, its id
+	// comes from the database. The check of the email gives the form its message, the unique
+	// index catches two sellers saved with the same email at the same time.
 	public void saveOrUpdate(Seller seller) {
-		if (seller.getId() == null) {
-			sellerDao.insert(seller);
-		} else {
-			sellerDao.update(seller);
+		SellerRules.VALIDATOR.validate(seller);
+		if (isEmailInUse(seller.getEmail(), seller.getId())) {
+			throw emailInUse();
+		}
+		try {
+			if (seller.getId() == null) {
+				sellerDao.insert(seller);
+			} else if (writeQueue != null) {
+				writeQueue.submit(seller);
+			} else {
+				sellerDao.update(seller);
+			}
+		} catch (DbDuplicateKeyException e) {
+			throw emailInUse();
 		}
 	}
+
+	// Email is the only unique column of the seller besides its id
+	static ValidationException emailInUse() {
+		ValidationException exception = new ValidationException("Validation Error");
+		exception.addErrors(SellerRules.EMAIL.getName(), EMAIL_IN_USE);
+		return exception;
+	}
 	
+	// One indexed lookup, the form runs it in the background while the user types
+	public boolean isEmailInUse(String email, Integer sellerId) {
+		return sellerDao.existsByEmail(email, sellerId);
+	}
+
 	public void remove(Seller seller) {
 		sellerDao.deleteById(seller.getId());
+		if (writeQueue != null) {
+			writeQueue.discard(seller.getId());
+		}
+	}
+
+	// Bulk maintenance: the new sellers are inserted and the others updated, both in JDBC batches.
+	// The rules are checked for every seller, a repeated email is only found by the unique index.
+	public void saveOrUpdateAll(Collection<Seller> sellers) {
+		List<Seller> inserts = new ArrayList<>();
+		List<Seller> updates = new ArrayList<>();
+		for (Seller seller : sellers) {
+			SellerRules.VALIDATOR.validate(seller);
+			if (seller.getId() == null) {
+				inserts.add(seller);
+			} else {
+				updates.add(seller);
+			}
+		}
+		try {
+			sellerDao.insertAll(inserts);
+			sellerDao.updateAll(updates);
+		} catch (DbDuplicateKeyException e) {
+			throw emailInUse();
+		}
+	}
+
+	public void removeAll(Collection<Seller> sellers) {
+		List<Integer> ids = new ArrayList<>();
+		for (Seller seller : sellers) {
+			ids.add(seller.getId());
+		}
+		sellerDao.deleteByIds(ids);
+		if (writeQueue != null) {
+			ids.forEach(writeQueue::discard);
+		}
+	}
+
+	private List<Seller> withPending(List<Seller> sellers) {
+		if (writeQueue != null) {
+			writeQueue.overlay(sellers);
+		}
+		return sellers;
+	}
+
+	// Headcount and salary aggregates computed by the database, no seller is loaded
+	public List<SalaryStatistics> salaryStatisticsByDepartment() {
+		return sellerDao.salaryStatisticsByDepartment();
+	}
+
+	public List<SalaryStatistics> salaryStatisticsByBirthYear(int yearsPerGroup) {
+		if (yearsPerGroup < 1) {
+			throw new IllegalArgumentException("Years per group must be positive: " + yearsPerGroup);
+		}
+		return sellerDao.salaryStatisticsByBirthYear(yearsPerGroup);
+	}
+
+	// Streams all the sellers to the file as CSV or JSON Lines without building the list.
+	// The rows go to a .part file that only replaces the target when the export finishes;
+	// progress receives the number of rows written and cancelled is checked before each row.
+	public long export(Path file, ExportFormat format, LongConsumer progress, BooleanSupplier cancelled) {
+		Path partFile = file.resolveSibling(file.getFileName() + ".part");
+		long[] rows = { 0 };
+		try {
+			try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+					Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), 64 * 1024)) {
+
+				SellerExportWriter out = new SellerExportWriter(writer, format);
+				out.writeHeader();
+				sellerDao.streamAll(seller -> {
+					if (cancelled.getAsBoolean()) {
+						return false;
+					}
+					try {
+						out.write(seller);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					if (++rows[0] % EXPORT_PROGRESS_INTERVAL == 0) {
+						progress.accept(rows[0]);
+					}
+					return true;
+				});
+			}
+			if (cancelled.getAsBoolean()) {
+				throw new CancellationException("Export cancelled after " + rows[0] + " rows");
+			}
+			Files.move(partFile, file, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			deleteQuietly(partFile);
+			throw new UncheckedIOException(e);
+		} catch (RuntimeException e) {
+			deleteQuietly(partFile);
+			throw e;
+		}
+		progress.accept(rows[0]);
+		return rows[0];
+	}
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// The partial file is left behind
+		}
+	}
+
+	// The async versions run on the ServiceExecutor, so the UI thread never waits for JDBC
+	public CompletableFuture<List<Seller>> findAllAsync() {
+		return ServiceExecutor.supply(this::findAll);
+	}
+
+	public CompletableFuture<Page<Seller>> findPageAsync(PageRequest<Seller> request) {
+		return ServiceExecutor.supply(() -> findPage(request));
+	}
+
+	public CompletableFuture<Seller> findByIdAsync(Integer id) {
+		return ServiceExecutor.supply(() -> findById(id));
+	}
+
+	public CompletableFuture<Integer> countAsync() {
+		return ServiceExecutor.supply(this::count);
+	}
+
+	public CompletableFuture<Page<Seller>> searchAsync(SellerSearchCriteria criteria, PageRequest<Seller> request) {
+		return ServiceExecutor.supply(() -> search(criteria, request));
+	}
+
+	public CompletableFuture<Integer> countAsync(SellerSearchCriteria criteria) {
+		return ServiceExecutor.supply(() -> count(criteria));
+	}
+
+	public CompletableFuture<Void> saveOrUpdateAsync(Seller seller) {
+		return ServiceExecutor.run(() -> saveOrUpdate(seller));
+	}
+
+	public CompletableFuture<Boolean> isEmailInUseAsync(String email, Integer sellerId) {
+		return ServiceExecutor.supply(() -> isEmailInUse(email, sellerId));
+	}
+
+	public CompletableFuture<Void> removeAsync(Seller seller) {
+		return ServiceExecutor.run(() -> remove(seller));
+	}
+
+	public CompletableFuture<List<SalaryStatistics>> salaryStatisticsByDepartmentAsync() {
+		return ServiceExecutor.supply(this::salaryStatisticsByDepartment);
+	}
+
+	public CompletableFuture<List<SalaryStatistics>> salaryStatisticsByBirthYearAsync(int yearsPerGroup) {
+		return ServiceExecutor.supply(() -> salaryStatisticsByBirthYear(yearsPerGroup));
+	}
+
+	// Cancelling the returned future stops the export at the next row
+	public CompletableFuture<Long> exportAsync(Path file, ExportFormat format, LongConsumer progress) {
+		CompletableFuture<Long> result = new CompletableFuture<>();
+		ServiceExecutor.supply(() -> export(file, format, progress, result::isCancelled))
+				.whenComplete((rows, error) -> {
+					if (error == null) {
+						result.complete(rows);
+					} else {
+						result.completeExceptionally(error);
+					}
+				});
+		return result;
 	}
 }
\ No newline at end of file
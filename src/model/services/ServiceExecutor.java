@@ -0,0 +1,110 @@
+package model.services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import db.DB;
+import db.DbException;
+
+// Runs the blocking DAO calls of the services outside of the JavaFX Application Thread.
+// Both the number of threads and the queue of pending calls are bounded (executor.threads
+// and executor.queueCapacity in db.properties), so a burst of clicks can not pile up work.
+// Cancelling a returned future also cancels the statement the call is running, so a
+// superseded search gives its thread and its connection back at once.
+public class ServiceExecutor {
+
+	private static ThreadPoolExecutor executor = null;
+
+	private static synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			int threads = DB.getInt(DB.getProperties(), "executor.threads", 4);
+			int queueCapacity = DB.getInt(DB.getProperties(), "executor.queueCapacity", 200);
+			AtomicInteger count = new AtomicInteger();
+			executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+						Thread thread = new Thread(runnable, "db-worker-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					});
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+
+	public static <T> CompletableFuture<T> supply(Supplier<T> action) {
+		Call<T> call = new Call<>(action);
+		try {
+			getExecutor().execute(call);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(new DbException("Too many pending database operations"));
+		}
+		return call.future;
+	}
+
+	public static CompletableFuture<Void> run(Runnable action) {
+		return supply(() -> {
+			action.run();
+			return null;
+		});
+	}
+
+	// The future of one call, a call cancelled while it waits in the queue does not run
+	private static class Call<T> implements Runnable {
+
+		private final Supplier<T> action;
+		private final CompletableFuture<T> future = new CompletableFuture<T>() {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				boolean cancelled = super.cancel(mayInterruptIfRunning);
+				if (cancelled) {
+					cancelStatements();
+				}
+				return cancelled;
+			}
+		};
+		// The thread running the call, guarded by this
+		private Thread worker;
+
+		private Call(Supplier<T> action) {
+			this.action = action;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				if (future.isDone()) {
+					return;
+				}
+				worker = Thread.currentThread();
+			}
+			try {
+				future.complete(action.get());
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			} finally {
+				synchronized (this) {
+					worker = null;
+				}
+			}
+		}
+
+		// Once the call is over the thread runs other calls, their statements are left alone
+		private synchronized void cancelStatements() {
+			if (worker != null) {
+				DB.cancelStatements(worker);
+			}
+		}
+	}
+
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+}
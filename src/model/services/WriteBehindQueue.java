@@ -0,0 +1,282 @@
+package model.services;
+
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+import db.DbConflictException;
+import db.DbException;
+import log.AppLog;
+import model.exceptions.ValidationException;
+
+// Write-behind of the updates of one table. submit returns once the entity is in the journal,
+// a background thread writes the pending entities to the database in batches. A new edit of an
+// entity still pending replaces the old one, so only the last one is written. When the database
+// is not reachable the batch is kept and retried later. When it rejects the batch, the entities
+// are written one by one and the ones rejected by the database itself (a conflict, an invalid
+// value, a missing department) are dropped and handed to the failure listener, the others
+// are not held back by them. The entities of the journal not written when the application
+// stopped are written after the next start.
+public class WriteBehindQueue<T extends Serializable> {
+
+	// How the queue reads and writes the entities of its table
+	public interface Store<T> {
+
+		Integer getId(T entity);
+
+		Integer getVersion(T entity);
+
+		void setVersion(T entity, Integer version);
+
+		// All the entities in one transaction
+		void writeAll(List<T> entities);
+
+		void write(T entity);
+
+		// The values saved by an update, the version aside, are the ones of the row
+		boolean sameValues(T entity, T row);
+	}
+
+	// The journal is rewritten with only the pending entities when it is bigger than this
+	private static final long COMPACT_BYTES = 1024 * 1024;
+
+	private final Store<T> store;
+	private final WriteJournal<T> journal;
+	private final int batchSize;
+	private final long flushIntervalMillis;
+	private final long maxRetryDelayMillis;
+	private final Thread worker;
+
+	// Guarded by this, in the order of the first edit of each id
+	private final Map<Integer, WriteJournal.Record<T>> pending = new LinkedHashMap<>();
+	private long nextSequence;
+	private boolean closed;
+
+	private volatile BiConsumer<T, RuntimeException> failureListener = (entity, error) -> {
+	};
+
+	public WriteBehindQueue(String name, Path journalFile, Store<T> store, int batchSize, long flushIntervalMillis,
+			long maxRetryDelayMillis) {
+		this.store = store;
+		this.journal = new WriteJournal<>(journalFile);
+		this.batchSize = batchSize;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.maxRetryDelayMillis = Math.max(maxRetryDelayMillis, flushIntervalMillis);
+
+		// The entities written before the last stop are replayed first
+		pending.putAll(journal.open());
+		for (WriteJournal.Record<T> record : pending.values()) {
+			nextSequence = Math.max(nextSequence, record.sequence + 1);
+		}
+
+		worker = new Thread(this::run, "write-behind-" + name);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	// Called by the worker thread with the entities it could not write
+	public void setFailureListener(BiConsumer<T, RuntimeException> failureListener) {
+		this.failureListener = failureListener;
+	}
+
+	// The entity is in the journal when this method returns
+	public synchronized void submit(T entity) {
+		if (closed) {
+			throw new IllegalStateException("Write-behind queue is closed");
+		}
+		Integer id = store.getId(entity);
+		long sequence = nextSequence++;
+		journal.put(sequence, id, entity);
+		pending.put(id, new WriteJournal.Record<>(sequence, entity));
+	}
+
+	// The pending entity of the id, or null when it is already in the database
+	public synchronized T getPending(Integer id) {
+		WriteJournal.Record<T> entry = pending.get(id);
+		return entry == null ? null : entry.entity;
+	}
+
+	// Replaces the entities read from the database by their pending versions
+	public synchronized void overlay(List<T> entities) {
+		if (!pending.isEmpty()) {
+			entities.replaceAll(entity -> {
+				WriteJournal.Record<T> entry = pending.get(store.getId(entity));
+				return entry == null ? entity : entry.entity;
+			});
+		}
+	}
+
+	// Forgets the pending entity, it was removed from the database
+	public synchronized void discard(Integer id) {
+		WriteJournal.Record<T> entry = pending.remove(id);
+		if (entry != null) {
+			journal.done(entry.sequence, id);
+		}
+	}
+
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	// Tries a last flush and stops the worker, what is still pending stays in the journal
+	public void close(long timeoutMillis) {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			notifyAll();
+		}
+		try {
+			worker.join(timeoutMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		journal.close();
+	}
+
+	private void run() {
+		long retryDelay = 0;
+		while (true) {
+			List<Map.Entry<Integer, WriteJournal.Record<T>>> batch;
+			synchronized (this) {
+				if (!closed) {
+					try {
+						wait(retryDelay > 0 ? retryDelay : flushIntervalMillis);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				batch = nextBatch();
+				if (batch.isEmpty() && closed) {
+					return;
+				}
+			}
+			try {
+				if (!batch.isEmpty()) {
+					flush(batch);
+				}
+				retryDelay = 0;
+			} catch (RuntimeException e) {
+				// The database is not reachable, what was not written is tried again later
+				retryDelay = Math.min(maxRetryDelayMillis, Math.max(flushIntervalMillis, retryDelay * 2));
+				AppLog.warn("Write-behind", e.getMessage() + ", retry in " + retryDelay + " ms");
+				if (closed) {
+					return;
+				}
+			}
+		}
+	}
+
+	private List<Map.Entry<Integer, WriteJournal.Record<T>>> nextBatch() {
+		List<Map.Entry<Integer, WriteJournal.Record<T>>> batch = new ArrayList<>();
+		for (Map.Entry<Integer, WriteJournal.Record<T>> entry : pending.entrySet()) {
+			if (batch.size() == batchSize) {
+				break;
+			}
+			batch.add(Map.entry(entry.getKey(), entry.getValue()));
+		}
+		return batch;
+	}
+
+	private void flush(List<Map.Entry<Integer, WriteJournal.Record<T>>> batch) {
+		List<T> entities = new ArrayList<>(batch.size());
+		List<Integer> versions = new ArrayList<>(batch.size());
+		for (Map.Entry<Integer, WriteJournal.Record<T>> entry : batch) {
+			entities.add(entry.getValue().entity);
+			versions.add(store.getVersion(entry.getValue().entity));
+		}
+		try {
+			store.writeAll(entities);
+		} catch (RuntimeException e) {
+			if (!isRejection(e)) {
+				throw e;
+			}
+			// The batch was rolled back, one entity is rejected: each one is written alone
+			for (int i = 0; i < batch.size(); i++) {
+				writeOne(batch.get(i), versions.get(i));
+			}
+			return;
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			written(batch.get(i), versions.get(i));
+		}
+	}
+
+	// A transient error stops the flush, the entities not written yet stay pending
+	private void writeOne(Map.Entry<Integer, WriteJournal.Record<T>> entry, Integer version) {
+		T entity = entry.getValue().entity;
+		try {
+			store.write(entity);
+		} catch (RuntimeException e) {
+			if (!isRejection(e)) {
+				throw e;
+			}
+			if (e instanceof DbConflictException && isAlreadyWritten(entity, ((DbConflictException) e).getCurrent())) {
+				store.setVersion(entity, version + 1);
+				written(entry, version);
+				return;
+			}
+			boolean discarded;
+			synchronized (this) {
+				// The update of an entity removed in the meantime is not an error
+				discarded = !pending.containsKey(entry.getKey());
+				forget(entry);
+			}
+			if (!discarded) {
+				AppLog.warn("Write-behind", e.getMessage());
+				failureListener.accept(entity, e);
+			}
+			return;
+		}
+		written(entry, version);
+	}
+
+	// The database refused the entity itself, writing it again would fail the same way
+	private static boolean isRejection(RuntimeException e) {
+		if (e instanceof DbConflictException || e instanceof ValidationException) {
+			return true;
+		}
+		return e instanceof DbException && !((DbException) e).isTransient();
+	}
+
+	// A stop after the commit of an update and before the journal knew it replays the update:
+	// the row then has the next version and the same values, which is not a conflict
+	@SuppressWarnings("unchecked")
+	private boolean isAlreadyWritten(T entity, Object current) {
+		Integer version = store.getVersion(entity);
+		if (version == null || current == null || current.getClass() != entity.getClass()) {
+			return false;
+		}
+		T row = (T) current;
+		return Objects.equals(store.getVersion(row), version + 1) && store.sameValues(entity, row);
+	}
+
+	private synchronized void written(Map.Entry<Integer, WriteJournal.Record<T>> entry, Integer versionBefore) {
+		forget(entry);
+		// An edit submitted during the flush was based on the version before it, the version
+		// written by this queue is not a change of another user
+		WriteJournal.Record<T> newer = pending.get(entry.getKey());
+		if (newer != null && Objects.equals(store.getVersion(newer.entity), versionBefore)) {
+			store.setVersion(newer.entity, store.getVersion(entry.getValue().entity));
+		}
+		if (journal.size() > COMPACT_BYTES) {
+			journal.compact(pending);
+		}
+	}
+
+	// A newer edit of the id stays pending
+	private void forget(Map.Entry<Integer, WriteJournal.Record<T>> entry) {
+		Integer id = entry.getKey();
+		WriteJournal.Record<T> current = pending.get(id);
+		if (current != null && current.sequence == entry.getValue().sequence) {
+			pending.remove(id);
+		}
+		journal.done(entry.getValue().sequence, id);
+	}
+}
@@ -0,0 +1,187 @@
+package model.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Append-only file of the writes accepted by the write-behind queue. A PUT record holds the
+// serialized entity, a DONE record tells that the entity was written to the database up to
+// that sequence. Every record is [type][sequence][id][length][bytes][crc32] and the file is
+// forced to disk before append returns. A record cut by a crash fails its CRC and ends the replay.
+class WriteJournal<T extends Serializable> {
+
+	private static final byte PUT = 1;
+	private static final byte DONE = 2;
+	private static final int HEADER_BYTES = 1 + 8 + 4 + 4;
+
+	// Pending write of one entity found by the replay
+	static class Record<T> {
+
+		final long sequence;
+		final T entity;
+
+		Record(long sequence, T entity) {
+			this.sequence = sequence;
+			this.entity = entity;
+		}
+	}
+
+	private final Path file;
+	private FileChannel channel;
+
+	WriteJournal(Path file) {
+		this.file = file;
+	}
+
+	// Reads the entities not yet written, the newest PUT of each id, in the order of the file.
+	// The journal is then open for appending after the last complete record.
+	synchronized Map<Integer, Record<T>> open() {
+		Map<Integer, Record<T>> pending = new LinkedHashMap<>();
+		long validBytes = 0;
+		if (Files.exists(file)) {
+			try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+				while (true) {
+					byte type = in.readByte();
+					long sequence = in.readLong();
+					int id = in.readInt();
+					byte[] bytes = new byte[in.readInt()];
+					in.readFully(bytes);
+					long crc = in.readLong();
+					if (crc != crc(type, sequence, id, bytes)) {
+						break;
+					}
+					if (type == PUT) {
+						pending.remove(id);
+						pending.put(id, new Record<>(sequence, deserialize(bytes)));
+					} else {
+						Record<T> record = pending.get(id);
+						if (record != null && record.sequence <= sequence) {
+							pending.remove(id);
+						}
+					}
+					validBytes += HEADER_BYTES + bytes.length + 8;
+				}
+			} catch (EOFException e) {
+				// The end of the file, or a record cut in the middle
+			} catch (IOException | ClassNotFoundException | NegativeArraySizeException e) {
+				// A damaged record, the records before it are kept
+			}
+		}
+		try {
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			channel.truncate(validBytes);
+			channel.position(validBytes);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return pending;
+	}
+
+	synchronized void put(long sequence, int id, T entity) {
+		append(PUT, sequence, id, serialize(entity));
+	}
+
+	synchronized void done(long sequence, int id) {
+		append(DONE, sequence, id, new byte[0]);
+	}
+
+	synchronized long size() {
+		try {
+			return channel.size();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Replaces the file by one with only the PUT records of the pending entities
+	synchronized void compact(Map<Integer, Record<T>> pending) {
+		Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+		try {
+			try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				for (Map.Entry<Integer, Record<T>> entry : pending.entrySet()) {
+					Record<T> record = entry.getValue();
+					write(out, PUT, record.sequence, entry.getKey(), serialize(record.entity));
+				}
+				out.force(true);
+			}
+			channel.close();
+			Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			channel = FileChannel.open(file, StandardOpenOption.WRITE);
+			channel.position(channel.size());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	synchronized void close() {
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void append(byte type, long sequence, int id, byte[] bytes) {
+		try {
+			write(channel, type, sequence, id, bytes);
+			channel.force(false);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void write(FileChannel out, byte type, long sequence, int id, byte[] bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bytes.length + 8);
+		buffer.put(type).putLong(sequence).putInt(id).putInt(bytes.length).put(bytes);
+		buffer.putLong(crc(type, sequence, id, bytes));
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	private static long crc(byte type, long sequence, int id, byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(ByteBuffer.allocate(HEADER_BYTES).put(type).putLong(sequence).putInt(id).putInt(bytes.length)
+				.flip());
+		crc.update(bytes);
+		return crc.getValue();
+	}
+
+	private static byte[] serialize(Serializable entity) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(entity);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	@SuppressWarnings("unchecked")
+	private T deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(Channels.newInputStream(
+				Channels.newChannel(new ByteArrayInputStream(bytes))))) {
+			return (T) in.readObject();
+		}
+	}
+}
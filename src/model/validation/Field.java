@@ -0,0 +1,67 @@
+package model.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+// A validated property of an entity. Besides the rules, a text field knows its maximum length
+// and the pattern of a partial input, which the forms use to reject a keystroke before the text changes.
+public class Field<T, V> {
+
+	private final String name;
+	private final Function<T, V> getter;
+	private final List<Rule<? super V>> rules;
+	private final int maxLength;
+	private final Pattern inputPattern;
+
+	@SafeVarargs
+	public Field(String name, Function<T, V> getter, Rule<? super V>... rules) {
+		this(name, getter, 0, null, rules);
+	}
+
+	@SafeVarargs
+	public Field(String name, Function<T, V> getter, int maxLength, Pattern inputPattern, Rule<? super V>... rules) {
+		this.name = name;
+		this.getter = getter;
+		this.maxLength = maxLength;
+		this.inputPattern = inputPattern;
+		// Copied, handing the array itself to Arrays.asList is an unchecked use of it
+		this.rules = new ArrayList<>(rules.length);
+		for (Rule<? super V> rule : rules) {
+			this.rules.add(rule);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	// Zero when the length is not limited
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	// Null when any character is accepted
+	public Pattern getInputPattern() {
+		return inputPattern;
+	}
+
+	// The message of the first rule broken by the value, null when it is valid
+	public String check(V value) {
+		for (Rule<? super V> rule : rules) {
+			String message = rule.check(value);
+			if (message != null) {
+				return message;
+			}
+		}
+		if (maxLength > 0 && value instanceof String && ((String) value).length() > maxLength) {
+			return "Maximum of " + maxLength + " characters";
+		}
+		return null;
+	}
+
+	public String checkEntity(T entity) {
+		return check(getter.apply(entity));
+	}
+}
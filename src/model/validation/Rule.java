@@ -0,0 +1,7 @@
+package model.validation;
+
+// A check of one field value, it returns the error message or null when the value is valid
+public interface Rule<V> {
+
+	String check(V value);
+}
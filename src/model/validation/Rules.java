@@ -0,0 +1,32 @@
+package model.validation;
+
+import java.util.Date;
+import java.util.regex.Pattern;
+
+// The rules used by the field definitions. The patterns are compiled once, by the caller
+// of matches, never on each check.
+public class Rules {
+
+	// Partial inputs accepted by the text fields while the user types
+	public static final Pattern INTEGER_INPUT = Pattern.compile("\\d*");
+	public static final Pattern DECIMAL_INPUT = Pattern.compile("\\d*(\\.\\d*)?");
+	public static final Pattern NO_SPACES_INPUT = Pattern.compile("\\S*");
+
+	public static <V> Rule<V> required() {
+		return value -> value == null || (value instanceof String && ((String) value).trim().isEmpty())
+				? "Field can not be empty"
+				: null;
+	}
+
+	public static Rule<String> matches(Pattern pattern, String message) {
+		return value -> value != null && !value.isEmpty() && !pattern.matcher(value).matches() ? message : null;
+	}
+
+	public static Rule<Double> min(double min) {
+		return value -> value != null && value < min ? "Must be at least " + min : null;
+	}
+
+	public static Rule<Date> notInTheFuture() {
+		return value -> value != null && value.getTime() > System.currentTimeMillis() ? "Date in the future" : null;
+	}
+}
@@ -0,0 +1,35 @@
+package model.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.exceptions.ValidationException;
+
+// The rules of an entity, shared by the forms and the services
+public class Validator<T> {
+
+	private final List<Field<T, ?>> fields;
+
+	@SafeVarargs
+	public Validator(Field<T, ?>... fields) {
+		// Copied, handing the array itself to Arrays.asList is an unchecked use of it
+		this.fields = new ArrayList<>(fields.length);
+		for (Field<T, ?> field : fields) {
+			this.fields.add(field);
+		}
+	}
+
+	// Throws a ValidationException with the first error of every invalid field
+	public void validate(T entity) {
+		ValidationException exception = new ValidationException("Validation Error");
+		for (Field<T, ?> field : fields) {
+			String message = field.checkEntity(entity);
+			if (message != null) {
+				exception.addErrors(field.getName(), message);
+			}
+		}
+		if (exception.getErros().size() > 0) {
+			throw exception;
+		}
+	}
+}